@@ -0,0 +1,96 @@
+package examples;
+
+import com.mwu.MWU;
+import com.mwu.config.MWUConfig;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Blocking Handler Benchmark for MWU Framework
+ *
+ * Compares the fixed platform thread pool with virtual-thread-per-connection
+ * mode when every handler blocks (simulating a slow database call).
+ */
+public class BlockingHandlerBenchmark {
+    private static final int CLIENTS = 200;
+    private static final int REQUESTS_PER_CLIENT = 20;
+    private static final int HANDLER_DELAY_MS = 50;
+
+    public static void main(String[] args) throws Exception {
+        run("platform pool", 8081, false);
+        run("virtual threads", 8082, true);
+        System.exit(0);
+    }
+
+    private static void run(String label, int port, boolean virtualThreads) throws Exception {
+        MWU server = MWU.builder()
+            .port(port)
+            .host("127.0.0.1")
+            .config(MWUConfig.builder()
+                .trafficMonitoringEnabled(false)
+                .virtualThreads(virtualThreads)
+                .build())
+            .build();
+
+        server.get("/slow", (req, res) -> {
+            Thread.sleep(HANDLER_DELAY_MS);
+            res.text("done");
+        });
+
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(1000);
+
+        HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newFixedThreadPool(CLIENTS))
+            .build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/slow")).build();
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        long start = System.nanoTime();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            futures.add(clients.submit(() -> {
+                for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+                    long t = System.nanoTime();
+                    client.send(request, HttpResponse.BodyHandlers.discarding());
+                    latencies.add((System.nanoTime() - t) / 1_000_000);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+
+        System.out.println();
+        System.out.println("==== " + label + " ====");
+        System.out.printf("requests:   %d%n", sorted.size());
+        System.out.printf("throughput: %.0f req/s%n", sorted.size() / seconds);
+        System.out.printf("p50:        %d ms%n", sorted.get(sorted.size() / 2));
+        System.out.printf("p99:        %d ms%n", sorted.get((int) (sorted.size() * 0.99)));
+        System.out.println();
+
+        clients.shutdownNow();
+        server.stop();
+    }
+}
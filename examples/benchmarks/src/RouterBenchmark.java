@@ -0,0 +1,138 @@
+package examples;
+
+import com.mwu.routing.Router;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Router Benchmark for MWU Framework
+ *
+ * Matches a mix of static, parameterized and unknown paths against 10, 100
+ * and 1000 registered routes, once with the segment-trie Router and once
+ * with the previous linear scan (one regex per route, run again to extract
+ * parameters). Simple warm-up-then-measure loop; run with a quiet machine.
+ */
+public class RouterBenchmark {
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int MEASURED_ITERATIONS = 1_000_000;
+
+    public static void main(String[] args) {
+        for (int routeCount : new int[] { 10, 100, 1000 }) {
+            Router router = new Router();
+            LegacyRouter legacy = new LegacyRouter();
+            for (String pattern : patterns(routeCount)) {
+                router.addRoute("GET", pattern, (req, res) -> { });
+                legacy.addRoute(pattern);
+            }
+            String[] paths = paths(routeCount);
+
+            double current = measure(paths, path -> router.match("GET", path) != null);
+            double linear = measure(paths, path -> legacy.match(path) != null);
+
+            System.out.println("==== " + routeCount + " routes ====");
+            System.out.printf("Linear regex scan: %8.0f ns/op%n", linear);
+            System.out.printf("Segment trie:      %8.0f ns/op%n", current);
+            System.out.println();
+        }
+    }
+
+    /**
+     * A third each of static pages, one-parameter and two-parameter routes
+     */
+    private static List<String> patterns(int count) {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; patterns.size() < count; i++) {
+            patterns.add("/pages/page" + i);
+            patterns.add("/api/v1/resource" + i + "/:id");
+            patterns.add("/api/v1/resource" + i + "/:id/items/:itemId");
+        }
+        return patterns.subList(0, count);
+    }
+
+    /**
+     * Requests spread over the whole table, plus some that match nothing
+     */
+    private static String[] paths(int routeCount) {
+        Random random = new Random(42);
+        String[] paths = new String[1024];
+        int resources = Math.max(1, routeCount / 3);
+        for (int i = 0; i < paths.length; i++) {
+            int n = random.nextInt(resources);
+            switch (i % 4) {
+                case 0: paths[i] = "/pages/page" + n; break;
+                case 1: paths[i] = "/api/v1/resource" + n + "/" + random.nextInt(100_000); break;
+                case 2: paths[i] = "/api/v1/resource" + n + "/7/items/" + random.nextInt(100); break;
+                default: paths[i] = "/wp-admin/setup-config.php"; break;
+            }
+        }
+        return paths;
+    }
+
+    private interface Lookup {
+        boolean match(String path);
+    }
+
+    private static double measure(String[] paths, Lookup lookup) {
+        int matched = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            if (lookup.match(paths[i & (paths.length - 1)])) matched++;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            if (lookup.match(paths[i & (paths.length - 1)])) matched++;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (matched == 0) {
+            throw new IllegalStateException("No path matched");
+        }
+        return elapsed / (double) MEASURED_ITERATIONS;
+    }
+
+    /**
+     * The router MWU used before the segment trie, kept here for comparison
+     * (with its parameter pattern fixed to match any segment).
+     */
+    private static class LegacyRouter {
+        private final List<LegacyRoute> routes = new ArrayList<>();
+
+        void addRoute(String path) {
+            routes.add(new LegacyRoute(path));
+        }
+
+        Map<String, String> match(String path) {
+            for (LegacyRoute route : routes) {
+                if (route.pattern.matcher(path).matches()) {
+                    return route.extractParams(path);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class LegacyRoute {
+        private static final Pattern PARAM = Pattern.compile(":(\\w+)");
+
+        final String path;
+        final Pattern pattern;
+
+        LegacyRoute(String path) {
+            this.path = path;
+            this.pattern = Pattern.compile("^" + path.replaceAll(":\\w+", "([^/]+)") + "$");
+        }
+
+        Map<String, String> extractParams(String requestPath) {
+            Map<String, String> params = new HashMap<>();
+            Matcher matcher = pattern.matcher(requestPath);
+            if (matcher.matches()) {
+                Matcher names = PARAM.matcher(path);
+                int group = 1;
+                while (names.find()) {
+                    params.put(names.group(1), matcher.group(group++));
+                }
+            }
+            return params;
+        }
+    }
+}
@@ -6,13 +6,18 @@ import com.mwu.routing.*;
 import com.mwu.config.MWUConfig;
 import com.mwu.maintenance.MaintenanceManager;
 import com.mwu.maintenance.MaintenanceMiddleware;
+import com.mwu.server.BlockingServerEngine;
+import com.mwu.server.ConnectionProcessor;
+import com.mwu.server.ServerEngine;
+import com.mwu.staticfiles.MimeTypes;
+import com.mwu.staticfiles.StaticAsset;
+import com.mwu.staticfiles.StaticFileCache;
 import com.mwu.util.TrafficMonitor;
 import com.mwu.util.Settings;
 import com.mwu.setters.PortSetter;
 import com.mwu.setters.HostSetter;
 import com.mwu.setters.PublicDirSetter;
 import com.mwu.middleware.*;
-import com.mwu.routing.ServerRoute;
 
 import java.io.*;
 import java.net.*;
@@ -33,20 +38,28 @@ import java.util.function.*;
  */
 public class MWU {
     private static final Logger logger = new Logger();
+    /** For static files requested by content-hashed URL */
+    private static final HeaderBlock IMMUTABLE_HEADERS =
+            HeaderBlock.of("Cache-Control", "public, max-age=31536000, immutable");
+    private static final String ROUTES_CLOSED = "Routes and middleware must be registered before the server starts;"
+            + " use routes(...) and reloadRoutes() for routes that change while it runs";
     
     // Core configuration
     private MWUConfig config;
     private int port = 8080;
     private String host = "0.0.0.0";
     private String publicDirectory = "public";
-    private boolean running = false;
+    private volatile boolean running = false;
     
     // Advanced features
     private final Router router;
+    private final List<Consumer<Router>> routeDefinitions = new ArrayList<>();
+    private volatile RouteTable routeTable; // compiled at start, replaced whole by reloadRoutes()
     private final MiddlewareChain middlewareChain;
     private final TrafficMonitor trafficMonitor;
     private ExecutorService threadPool;
-    private ServerSocket serverSocket;
+    private ServerEngine engine = new BlockingServerEngine();
+    private StaticFileCache staticFiles;
     
     // Plugin system
     private final Map<String, Plugin> plugins = new ConcurrentHashMap<>();
@@ -58,6 +71,7 @@ public class MWU {
     
     // Maintenance mode
     private MaintenanceManager maintenanceManager;
+    private MaintenanceMiddleware maintenanceMiddleware;
     
     public MWU() {
         this.config = MWUConfig.builder().build();
@@ -76,7 +90,8 @@ public class MWU {
     
     private void registerDefaultMiddleware() {
         // Maintenance middleware (check first)
-        use(new MaintenanceMiddleware(maintenanceManager));
+        maintenanceMiddleware = new MaintenanceMiddleware(maintenanceManager);
+        use(maintenanceMiddleware);
         
         // Logging middleware
         use(new LoggingMiddleware());
@@ -114,11 +129,58 @@ public class MWU {
             return this;
         }
         
+        public Builder virtualThreads() {
+            mwu.config.setVirtualThreadsEnabled(true);
+            return this;
+        }
+        
+        public Builder maxKeepAliveRequests(int max) {
+            mwu.config.setMaxKeepAliveRequests(max);
+            return this;
+        }
+        
+        /**
+         * Selects the transport engine, e.g. {@code new NioServerEngine()}
+         * for many mostly-idle keep-alive connections. Defaults to the
+         * blocking engine.
+         */
+        public Builder engine(ServerEngine engine) {
+            mwu.engine = engine;
+            return this;
+        }
+        
+        /**
+         * Content type for static files with this extension, overriding the
+         * built-in table
+         */
+        public Builder mimeType(String extension, String contentType) {
+            mwu.config.setMimeType(extension, contentType);
+            return this;
+        }
+        
+        /**
+         * Also serves each static file under a content-hashed URL that
+         * clients cache for a year without revalidating; link to them with
+         * {@link MWU#assetUrl(String)}
+         */
+        public Builder fingerprintStaticFiles() {
+            mwu.config.setFingerprintStaticFiles(true);
+            return this;
+        }
+        
         public Builder enableCors() {
             mwu.use(new CorsMiddleware());
             return this;
         }
         
+        /**
+         * Compresses compressible dynamic responses of 1KB or more
+         */
+        public Builder enableCompression() {
+            mwu.use(new CompressionMiddleware());
+            return this;
+        }
+        
         public Builder rateLimit(int requestsPerMinute) {
             mwu.use(new RateLimitMiddleware(requestsPerMinute));
             return this;
@@ -141,50 +203,119 @@ public class MWU {
     // ==================== Routing API ====================
     
     public MWU get(String path, RouteHandler handler) {
-        router.addRoute("GET", path, handler);
+        addRoute("GET", path, handler);
         return this;
     }
     
     public MWU post(String path, RouteHandler handler) {
-        router.addRoute("POST", path, handler);
+        addRoute("POST", path, handler);
         return this;
     }
     
     public MWU put(String path, RouteHandler handler) {
-        router.addRoute("PUT", path, handler);
+        addRoute("PUT", path, handler);
         return this;
     }
     
     public MWU delete(String path, RouteHandler handler) {
-        router.addRoute("DELETE", path, handler);
+        addRoute("DELETE", path, handler);
         return this;
     }
     
     public MWU patch(String path, RouteHandler handler) {
-        router.addRoute("PATCH", path, handler);
+        addRoute("PATCH", path, handler);
         return this;
     }
     
     public MWU route(String method, String path, RouteHandler handler) {
-        router.addRoute(method, path, handler);
+        addRoute(method, path, handler);
         return this;
     }
     
     // Group routes with common prefix
-    public MWU group(String prefix, Consumer<Router> routerConfig) {
+    public synchronized MWU group(String prefix, Consumer<Router> routerConfig) {
+        checkRoutesOpen();
         Router groupRouter = router.group(prefix);
         routerConfig.accept(groupRouter);
         return this;
     }
     
+    /**
+     * Routes defined by code that runs again on every
+     * {@link #reloadRoutes()}, e.g. routes behind feature flags. Added
+     * while the server runs, the definition takes effect at once.
+     *
+     * @throws IllegalStateException if the server is running and the new
+     *         routes conflict with the existing ones; nothing changes
+     */
+    public synchronized MWU routes(Consumer<Router> definition) {
+        routeDefinitions.add(definition);
+        if (running) {
+            try {
+                reloadRoutes();
+            } catch (RuntimeException e) {
+                routeDefinitions.remove(routeDefinitions.size() - 1);
+                throw e;
+            }
+        }
+        return this;
+    }
+    
+    /**
+     * Rebuilds the routing table, running the {@link #routes(Consumer)}
+     * definitions again, and swaps it in with a single write. Requests
+     * already routed finish on the old table; no connection is dropped.
+     *
+     * @throws IllegalStateException if the rebuilt routes conflict; the
+     *         current table stays in place
+     */
+    public synchronized void reloadRoutes() {
+        RouteTable table = compileRoutes();
+        routeTable = table;
+        logger.info("✓ Routes reloaded: " + table.getRouteCount());
+    }
+    
+    /**
+     * Compiles the directly registered routes, the route definitions and
+     * the built-in endpoints into a fresh table
+     */
+    private RouteTable compileRoutes() {
+        Router routes = router.copy();
+        for (Consumer<Router> definition : routeDefinitions) {
+            definition.accept(routes);
+        }
+        registerDefaultRoutes(routes);
+        return routes.compile(middlewareChain.getMiddlewares(),
+                handler -> (request, response) -> invoke(handler, request, response));
+    }
+    
+    private synchronized void addRoute(String method, String path, RouteHandler handler) {
+        checkRoutesOpen();
+        router.addRoute(method, path, handler);
+    }
+    
+    /**
+     * Routes and middleware are compiled together when the server starts
+     * and fixed from then on. Callers hold the monitor, as start() does
+     * from compiling to setting running, so nothing registered in between
+     * is lost.
+     */
+    private void checkRoutesOpen() {
+        if (running) {
+            throw new IllegalStateException(ROUTES_CLOSED);
+        }
+    }
+    
     // ==================== Middleware API ====================
     
-    public MWU use(Middleware middleware) {
+    public synchronized MWU use(Middleware middleware) {
+        checkRoutesOpen();
         middlewareChain.add(middleware);
         return this;
     }
     
-    public MWU use(String path, Middleware middleware) {
+    public synchronized MWU use(String path, Middleware middleware) {
+        checkRoutesOpen();
         middlewareChain.add(new PathFilteredMiddleware(path, middleware));
         return this;
     }
@@ -196,6 +327,26 @@ public class MWU {
         return this;
     }
     
+    /**
+     * URL to link to a static file with: its content-hashed URL when
+     * fingerprinting is on, e.g. "/js/app.3f9c2a1b.js" for "/js/app.js".
+     * Returns the path unchanged if fingerprinting is off, the server has
+     * not started, or there is no such file.
+     */
+    public String assetUrl(String path) {
+        StaticFileCache files = staticFiles;
+        return files != null ? files.fingerprintedUrl(path) : path;
+    }
+    
+    /**
+     * All hashed URLs by plain URL path, e.g. for an import map or a
+     * client-side asset loader; empty unless fingerprinting is on
+     */
+    public Map<String, String> assetManifest() {
+        StaticFileCache files = staticFiles;
+        return files != null ? files.getManifest() : Collections.emptyMap();
+    }
+    
     // ==================== Plugin System ====================
     
     public MWU registerPlugin(String name, Plugin plugin) {
@@ -250,122 +401,137 @@ public class MWU {
     // ==================== Server Lifecycle ====================
     
     public void start() throws IOException {
-        if (running) {
-            throw new IllegalStateException("Server is already running");
+        // Registration and reloads wait until routes are compiled and running is set
+        synchronized (this) {
+            if (running) {
+                throw new IllegalStateException("Server is already running");
+            }
+            
+            logger.info("Starting MWU Framework...");
+            
+            // Compile all routes, defaults included, before accepting connections
+            routeTable = compileRoutes();
+            
+            // Initialize thread pool
+            threadPool = createThreadPool();
+            
+            // Load settings if available
+            loadSettings();
+            
+            // Bind server socket
+            engine.bind(new InetSocketAddress(InetAddress.getByName(host), port));
+            running = true;
+            // Routers and groups handed out earlier must not change unnoticed either
+            router.seal(ROUTES_CLOSED);
         }
         
-        logger.info("Starting MWU Framework...");
-        
-        // Initialize thread pool
-        int poolSize = config.getThreadPoolSize();
-        threadPool = Executors.newFixedThreadPool(poolSize);
-        logger.info("Thread pool initialized with " + poolSize + " threads");
-        
-        // Load settings if available
-        loadSettings();
-        
-        // Create server socket
-        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(host));
-        running = true;
+        // Static file cache, kept fresh by watching the public directory
+        if (publicDirectory != null) {
+            staticFiles = new StaticFileCache(Paths.get(publicDirectory),
+                    config.getStaticCacheSize(), config.getStaticCacheMaxFileSize(),
+                    config.getMappedFileCacheSize());
+            staticFiles.setPrecompress(config.isPrecompressStaticFiles());
+            staticFiles.setMimeTypes(new MimeTypes(config.getMimeTypes()));
+            staticFiles.setFingerprint(config.isFingerprintStaticFiles());
+            // Special pages stay in memory, ready to go out in one write
+            for (String page : new String[] { "index.html", "404.html", MaintenanceMiddleware.PAGE }) {
+                staticFiles.pin(staticFiles.getRoot().resolve(page));
+            }
+            staticFiles.start();
+            maintenanceMiddleware.setStaticFiles(staticFiles);
+        }
         
         // Notify lifecycle listeners
         lifecycleListeners.forEach(LifecycleListener::onStart);
         
-        // Register default routes
-        registerDefaultRoutes();
-        
         logger.info("✓ Server started successfully");
-        logger.info("✓ Listening on http://" + host + ":" + port);
+        logger.info("✓ Listening on http://" + host + ":" + port + " (" + engine.getName() + " engine)");
         logger.info("✓ Public directory: " + publicDirectory);
         logger.info("✓ Middleware chain: " + middlewareChain.size() + " middleware(s)");
-        logger.info("✓ Routes registered: " + router.getRouteCount());
+        logger.info("✓ Routes registered: " + routeTable.getRouteCount());
         
         // Accept connections
-        acceptConnections();
+        try {
+            engine.serve(new ConnectionProcessor(config, this::handleRequest), threadPool);
+        } catch (IOException e) {
+            logger.error("Could not start serving: " + e.getMessage());
+            stop();
+            throw e;
+        }
     }
     
-    private void acceptConnections() {
-        while (running) {
+    private ExecutorService createThreadPool() {
+        if (config.isVirtualThreadsEnabled()) {
             try {
-                Socket clientSocket = serverSocket.accept();
-                threadPool.execute(() -> handleConnection(clientSocket));
-            } catch (IOException e) {
-                if (running) {
-                    logger.error("Error accepting connection: " + e.getMessage());
-                }
+                // Looked up reflectively so the framework still runs on Java 17
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+                logger.info("Using a virtual thread per connection");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Virtual threads require Java 21+, falling back to a fixed thread pool");
             }
         }
+        
+        int poolSize = config.getThreadPoolSize();
+        logger.info("Thread pool initialized with " + poolSize + " threads");
+        return Executors.newFixedThreadPool(poolSize);
     }
     
-    private void handleConnection(Socket socket) {
+    /**
+     * Routes a single request and runs it through its middleware: for a
+     * matched route, the chain compiled into its handler; otherwise the
+     * server-wide chain, ahead of static files and the 404 page.
+     *
+     * @return true if the response was written cleanly and the connection
+     *         can be reused for another request
+     */
+    private boolean handleRequest(Request request, Response response) {
         long startTime = System.currentTimeMillis();
-        Request request = null;
-        Response response = null;
+        boolean completed = true;
         
         try {
-            // Parse request
-            request = Request.parse(socket.getInputStream(), socket);
-            response = new Response(socket.getOutputStream());
-            
-            // Make effectively final for lambda
-            final Request finalRequest = request;
-            final Response finalResponse = response;
-            
             // Record traffic
             if (config.isTrafficMonitoringEnabled()) {
                 trafficMonitor.recordRequest(
-                    finalRequest.getPath(),
-                    finalRequest.getClientIP(),
-                    finalRequest.getMethod(),
-                    finalRequest.getHeader("User-Agent")
+                    request.getPath(),
+                    request.getClientIP(),
+                    request.getMethod(),
+                    request.getHeader("User-Agent")
                 );
             }
             
-            // Execute middleware chain and route handler
-            middlewareChain.execute(finalRequest, finalResponse, () -> {
-                // Try to match route
-                try {
-                    ServerRoute route = router.match(finalRequest.getMethod(), finalRequest.getPath());
-
-                    if (route != null) {
-                        finalRequest.setParams(route.getParams());
-                        route.getHandler().handle(finalRequest, finalResponse);
-
-                    } else if ("/".equals(finalRequest.getPath())) {
-                        // Serve index.html for root path
-                        serveIndexFile(finalRequest, finalResponse);
-
-                    } else if (isStaticFileRequest(finalRequest)) {
-                        serveStaticFile(finalRequest, finalResponse);
-
-                    } else {
-                        // Serve 404.html for invalid paths
-                        serve404File(finalRequest, finalResponse);
-                    }
-
-                } catch (Exception e) {
-                    try {
-                        finalResponse.status(500).send("Internal Server Error");
-                    } catch (IOException ignored) {
-                        // fallback
-                    }
-                }
-            });
-
+            // One table for the whole request, even if it is swapped meanwhile
+            RouteTable table = routeTable;
+            RouteMatch match = table.match(request.getMethod(), request.getPath());
+            
+            if (match != null) {
+                // Middleware for this route is already composed into its handler
+                request.setRouteMatch(match);
+                match.getHandler().handle(request, response);
+            } else {
+                middlewareChain.execute(request, response,
+                        () -> invoke((req, res) -> serveUnrouted(table, req, res), request, response));
+            }
             
-            // Ensure response is sent
-            if (!finalResponse.isSent()) {
-                finalResponse.send();
+            // Ensure response is sent, and any streamed body completed
+            if (!response.isSent()) {
+                response.send();
+            } else {
+                response.finish();
             }
             
         } catch (Exception e) {
             logger.error("Error handling request: " + e.getMessage());
+            completed = false;
             
-            if (response != null && !response.isSent()) {
+            if (!response.isSent()) {
                 try {
                     if (config.getErrorHandler() != null) {
                         config.getErrorHandler().accept(request, e);
                     }
+                    response.header("Connection", "close");
                     response.status(500).send("Internal Server Error");
                 } catch (Exception ex) {
                     logger.error("Error sending error response: " + ex.getMessage());
@@ -375,7 +541,7 @@ public class MWU {
             // Record metrics
             long responseTime = System.currentTimeMillis() - startTime;
             
-            if (response != null && config.isTrafficMonitoringEnabled()) {
+            if (config.isTrafficMonitoringEnabled()) {
                 trafficMonitor.recordResponse(
                     response.getStatusCode(),
                     responseTime,
@@ -384,19 +550,26 @@ public class MWU {
             }
             
             metricsCollector.recordRequest(responseTime);
-            
-            // Close socket
-            try {
-                socket.close();
-            } catch (IOException e) {
-                logger.error("Error closing socket: " + e.getMessage());
+        }
+        
+        return completed;
+    }
+    
+    private static HttpParseException findParseError(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof HttpParseException) {
+                return (HttpParseException) t;
             }
         }
+        return null;
     }
     
-    private void registerDefaultRoutes() {
+    /**
+     * Built-in endpoints, unless the application registered its own
+     */
+    private void registerDefaultRoutes(Router routes) {
         // Health check endpoint
-        get("/_health", (req, res) -> {
+        defaultRoute(routes, "/_health", (req, res) -> {
             Map<String, Object> health = new HashMap<>();
             health.put("status", "healthy");
             health.put("uptime", metricsCollector.getUptime());
@@ -405,87 +578,153 @@ public class MWU {
         });
         
         // Metrics endpoint
-        get("/_metrics", (req, res) -> {
-            if (config.isTrafficMonitoringEnabled()) {
-                res.json(convertTrafficStats(trafficMonitor.getStats()));
-            } else {
-                res.json(metricsCollector.getMetrics());
+        defaultRoute(routes, "/_metrics", (req, res) -> {
+            Map<String, Object> metrics = config.isTrafficMonitoringEnabled()
+                    ? convertTrafficStats(trafficMonitor.getStats())
+                    : metricsCollector.getMetrics();
+            if (staticFiles != null) {
+                metrics.put("static_cache", staticFiles.getStats());
             }
+            res.json(metrics);
         });
         
         // Server info endpoint
-        get("/_info", (req, res) -> {
+        defaultRoute(routes, "/_info", (req, res) -> {
             Map<String, Object> info = new HashMap<>();
             info.put("framework", "MWU");
             info.put("version", "2.0.0");
-            info.put("routes", router.getRouteCount());
+            info.put("routes", routeTable.getRouteCount());
             info.put("middleware", middlewareChain.size());
             info.put("plugins", plugins.keySet());
             res.json(info);
         });
     }
     
-    private boolean isStaticFileRequest(Request request) {
-        if (publicDirectory == null) return false;
-        
-        String path = request.getPath();
-        Path filePath = Paths.get(publicDirectory, path);
-        
-        return Files.exists(filePath) && Files.isRegularFile(filePath);
+    private void defaultRoute(Router routes, String path, RouteHandler handler) {
+        if (!routes.hasRoute("GET", path)) {
+            routes.addRoute("GET", path, handler);
+        }
+    }
+    
+    /**
+     * Runs a route handler, turning its failure into an error response
+     */
+    private void invoke(RouteHandler handler, Request request, Response response) {
+        try {
+            handler.handle(request, response);
+        } catch (Exception e) {
+            if (response.isSent()) {
+                // Streamed body already under way; cut it off
+                logger.error("Error while streaming response: " + e.getMessage());
+                response.abort();
+                return;
+            }
+            try {
+                HttpParseException bodyError = findParseError(e);
+                if (bodyError != null) {
+                    // Malformed or oversized body; the rest of the stream is unusable
+                    response.header("Connection", "close");
+                    response.status(bodyError.getStatusCode()).send(bodyError.getMessage());
+                } else {
+                    response.status(500).send("Internal Server Error");
+                }
+            } catch (IOException ignored) {
+                // fallback
+            }
+        }
+    }
+    
+    /**
+     * A request no route matched: the index page, a static file, 405 or 404
+     */
+    private void serveUnrouted(RouteTable table, Request request, Response response) throws IOException {
+        if ("/".equals(request.getPath())) {
+            // Serve index.html for root path
+            serveIndexFile(request, response);
+            
+        } else if (serveStaticFile(request, response)) {
+            // Served from the public directory
+            
+        } else if (!sendMethodNotAllowed(table, request, response)) {
+            // Serve 404.html for invalid paths
+            serve404File(request, response);
+        }
+    }
+    
+    /**
+     * Answers 405 with Allow if the path has routes, just not for this
+     * method
+     *
+     * @return false if no route matches the path under any method
+     */
+    private boolean sendMethodNotAllowed(RouteTable table, Request request, Response response) throws IOException {
+        String allow = table.allowedMethods(request.getPath());
+        if (allow == null) {
+            return false;
+        }
+        response.status(405).header("Allow", allow).send("Method Not Allowed");
+        return true;
     }
     
     private void serveIndexFile(Request request, Response response) throws IOException {
-        Path filePath = Paths.get(publicDirectory, "index.html");
-        
-        if (!Files.exists(filePath)) {
+        StaticAsset page = findPage("index.html");
+        if (page == null) {
             response.status(404).send("<h1>404 - Index Not Found</h1>");
             return;
         }
-        
-        String contentType = "text/html";
-        byte[] content = Files.readAllBytes(filePath);
-        response.header("Content-Type", contentType)
-                .header("Content-Length", String.valueOf(content.length))
-                .send(content);
+        page.send(request, response);
     }
     
     private void serve404File(Request request, Response response) throws IOException {
-        Path filePath = Paths.get(publicDirectory, "404.html");
         response.status(404);
         
-        if (Files.exists(filePath)) {
-            String contentType = "text/html";
-            byte[] content = Files.readAllBytes(filePath);
-            response.header("Content-Type", contentType)
-                    .header("Content-Length", String.valueOf(content.length))
-                    .send(content);
+        StaticAsset page = findPage("404.html");
+        if (page != null) {
+            page.send(request, response);
         } else {
             response.send("<h1>404 - Page Not Found</h1>");
         }
     }
     
-    private void serveStaticFile(Request request, Response response) throws IOException {
-        Path filePath = Paths.get(publicDirectory, request.getPath());
+    /**
+     * A pinned page from the public directory, or null if it does not exist
+     */
+    private StaticAsset findPage(String name) throws IOException {
+        if (staticFiles == null) {
+            return null;
+        }
+        return staticFiles.get(staticFiles.getRoot().resolve(name));
+    }
+    
+    /**
+     * @return false if there is no such file in the public directory
+     */
+    private boolean serveStaticFile(Request request, Response response) throws IOException {
+        if (staticFiles == null) return false;
         
-        if (!filePath.normalize().startsWith(Paths.get(publicDirectory).normalize())) {
+        Path root = staticFiles.getRoot();
+        Path filePath = root.resolve(request.getPath().substring(1)).normalize();
+        
+        if (!filePath.startsWith(root)) {
             response.status(403).send("Forbidden");
-            return;
+            return true;
         }
         
-        if (!Files.exists(filePath)) {
-            response.status(404).send("Not Found");
-            return;
+        StaticAsset asset = staticFiles.getFingerprinted(request.getPath());
+        if (asset != null) {
+            // The URL names this exact content, so it never needs revalidating
+            response.headers(IMMUTABLE_HEADERS);
+            asset.send(request, response);
+            return true;
         }
         
-        String contentType = Files.probeContentType(filePath);
-        if (contentType == null) {
-            contentType = "application/octet-stream";
+        asset = staticFiles.get(filePath);
+        if (asset == null) {
+            return false;
         }
-        
-        byte[] content = Files.readAllBytes(filePath);
-        response.header("Content-Type", contentType)
-                .header("Content-Length", String.valueOf(content.length))
-                .send(content);
+        // Pre-encoded headers; gzip, 304 and Range handled by the asset
+        asset.send(request, response);
+        return true;
     }
     
     private Map<String, Object> convertTrafficStats(TrafficMonitor.TrafficStats stats) {
@@ -545,10 +784,18 @@ public class MWU {
         
         logger.info("Stopping MWU Framework...");
         running = false;
+        router.unseal();
         
         // Notify lifecycle listeners
         lifecycleListeners.forEach(LifecycleListener::onStop);
         
+        // Stop accepting connections
+        engine.stop();
+        
+        if (staticFiles != null) {
+            staticFiles.close();
+        }
+        
         // Shutdown thread pool
         if (threadPool != null) {
             threadPool.shutdown();
@@ -561,15 +808,6 @@ public class MWU {
             }
         }
         
-        // Close server socket
-        try {
-            if (serverSocket != null) {
-                serverSocket.close();
-            }
-        } catch (IOException e) {
-            logger.error("Error closing server socket: " + e.getMessage());
-        }
-        
         logger.info("✓ Server stopped");
     }
     
@@ -626,6 +864,10 @@ public class MWU {
         return trafficMonitor;
     }
     
+    /**
+     * The router routes are registered on; like the server, it rejects new
+     * routes and middleware once started
+     */
     public Router getRouter() {
         return router;
     }
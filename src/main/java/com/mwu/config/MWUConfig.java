@@ -2,6 +2,9 @@ package com.mwu.config;
 
 import com.mwu.routing.Request;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.BiConsumer;
 
 /**
@@ -11,7 +14,21 @@ public class MWUConfig {
     private int threadPoolSize = 50;
     private boolean trafficMonitoringEnabled = true;
     private int maxRequestSize = 10 * 1024 * 1024; // 10MB
+    private int maxHeaderSize = 8 * 1024; // request line + headers
+    private int maxHeaderCount = 100;
+    private int multipartMemoryThreshold = 64 * 1024; // larger parts go to disk
+    private String uploadDirectory; // null = system temp directory
+    private long staticCacheSize = 64L * 1024 * 1024; // bytes of static files held in memory
+    private int staticCacheMaxFileSize = 1024 * 1024; // larger files are served from disk
+    private long mappedFileCacheSize = 256L * 1024 * 1024; // bytes of large static files kept mapped
+    private boolean precompressStaticFiles = true; // gzip cached static files in the background
+    private boolean fingerprintStaticFiles = false; // serve static files under content-hashed URLs too
+    private final Map<String, String> mimeTypes = new HashMap<>(); // extension -> Content-Type overrides
     private int connectionTimeout = 30000; // 30 seconds
+    private int writeTimeout = 30000; // max time a write may stall on a slow client
+    private int responseChunkSize = 8 * 1024;
+    private int maxKeepAliveRequests = 100;
+    private boolean virtualThreads = false;
     private BiConsumer<Request, Throwable> errorHandler;
     
     private MWUConfig() {}
@@ -38,11 +55,113 @@ public class MWUConfig {
             return this;
         }
         
+        public Builder maxHeaderSize(int bytes) {
+            config.maxHeaderSize = bytes;
+            return this;
+        }
+        
+        public Builder maxHeaderCount(int count) {
+            config.maxHeaderCount = count;
+            return this;
+        }
+        
+        /**
+         * Multipart parts larger than this are written to temporary files
+         * instead of being kept in memory
+         */
+        public Builder multipartMemoryThreshold(int bytes) {
+            config.multipartMemoryThreshold = bytes;
+            return this;
+        }
+        
+        public Builder uploadDirectory(String directory) {
+            config.uploadDirectory = directory;
+            return this;
+        }
+        
+        /**
+         * Memory budget for cached static files; 0 disables the cache
+         */
+        public Builder staticCacheSize(long bytes) {
+            config.staticCacheSize = bytes;
+            return this;
+        }
+        
+        public Builder staticCacheMaxFileSize(int bytes) {
+            config.staticCacheMaxFileSize = bytes;
+            return this;
+        }
+        
+        /**
+         * Budget for memory-mapping large, frequently requested static files
+         * (off-heap); 0 disables mapping
+         */
+        public Builder mappedFileCacheSize(long bytes) {
+            config.mappedFileCacheSize = bytes;
+            return this;
+        }
+        
+        /**
+         * Whether to gzip compressible cached static files in the
+         * background; ".gz" sidecar files are served either way
+         */
+        public Builder precompressStaticFiles(boolean enabled) {
+            config.precompressStaticFiles = enabled;
+            return this;
+        }
+        
+        /**
+         * Whether to also serve each static file under a content-hashed URL
+         * (see {@code MWU.assetUrl}) with a one-year immutable Cache-Control
+         */
+        public Builder fingerprintStaticFiles(boolean enabled) {
+            config.fingerprintStaticFiles = enabled;
+            return this;
+        }
+        
+        /**
+         * Content type for files with this extension, added to or replacing
+         * the built-in table, e.g. {@code mimeType("mjs", "text/javascript")}.
+         * Used as given, so include any charset.
+         */
+        public Builder mimeType(String extension, String contentType) {
+            config.setMimeType(extension, contentType);
+            return this;
+        }
+        
         public Builder connectionTimeout(int ms) {
             config.connectionTimeout = ms;
             return this;
         }
         
+        public Builder writeTimeout(int ms) {
+            config.writeTimeout = ms;
+            return this;
+        }
+        
+        /**
+         * Buffer size for streamed responses; each full buffer is sent as
+         * one chunk
+         */
+        public Builder responseChunkSize(int bytes) {
+            config.responseChunkSize = bytes;
+            return this;
+        }
+        
+        public Builder maxKeepAliveRequests(int max) {
+            config.maxKeepAliveRequests = max;
+            return this;
+        }
+        
+        /**
+         * Runs each connection on its own virtual thread instead of the
+         * fixed pool (requires Java 21+, ignored with a warning otherwise)
+         */
+        public Builder virtualThreads(boolean enabled) {
+            config.virtualThreads = enabled;
+            return this;
+        }
+        
         public Builder errorHandler(BiConsumer<Request, Throwable> handler) {
             config.errorHandler = handler;
             return this;
@@ -66,10 +185,69 @@ public class MWUConfig {
         return maxRequestSize;
     }
     
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+    
+    public int getMaxHeaderCount() {
+        return maxHeaderCount;
+    }
+    
+    public int getMultipartMemoryThreshold() {
+        return multipartMemoryThreshold;
+    }
+    
+    public String getUploadDirectory() {
+        return uploadDirectory;
+    }
+    
+    public long getStaticCacheSize() {
+        return staticCacheSize;
+    }
+    
+    public int getStaticCacheMaxFileSize() {
+        return staticCacheMaxFileSize;
+    }
+    
+    public long getMappedFileCacheSize() {
+        return mappedFileCacheSize;
+    }
+    
+    public boolean isPrecompressStaticFiles() {
+        return precompressStaticFiles;
+    }
+    
+    public boolean isFingerprintStaticFiles() {
+        return fingerprintStaticFiles;
+    }
+    
+    /**
+     * Content type overrides by file extension
+     */
+    public Map<String, String> getMimeTypes() {
+        return Collections.unmodifiableMap(mimeTypes);
+    }
+    
     public int getConnectionTimeout() {
         return connectionTimeout;
     }
     
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+    
+    public int getResponseChunkSize() {
+        return responseChunkSize;
+    }
+    
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+    
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreads;
+    }
+    
     public BiConsumer<Request, Throwable> getErrorHandler() {
         return errorHandler;
     }
@@ -83,7 +261,23 @@ public class MWUConfig {
         this.trafficMonitoringEnabled = enabled;
     }
     
+    public void setMaxKeepAliveRequests(int max) {
+        this.maxKeepAliveRequests = max;
+    }
+    
+    public void setVirtualThreadsEnabled(boolean enabled) {
+        this.virtualThreads = enabled;
+    }
+    
     public void setErrorHandler(BiConsumer<Request, Throwable> handler) {
         this.errorHandler = handler;
     }
+    
+    public void setFingerprintStaticFiles(boolean fingerprintStaticFiles) {
+        this.fingerprintStaticFiles = fingerprintStaticFiles;
+    }
+    
+    public void setMimeType(String extension, String contentType) {
+        this.mimeTypes.put(extension, contentType);
+    }
 }
\ No newline at end of file
@@ -3,17 +3,33 @@ package com.mwu.maintenance;
 import com.mwu.middleware.Middleware;
 import com.mwu.routing.Request;
 import com.mwu.routing.Response;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import com.mwu.staticfiles.StaticAsset;
+import com.mwu.staticfiles.StaticFileCache;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 public class MaintenanceMiddleware implements Middleware {
+    /** Maintenance page in the public directory */
+    public static final String PAGE = "maintenance.html";
+    
     private final MaintenanceManager maintenanceManager;
+    private volatile StaticFileCache staticFiles;
+    
+    // Built-in page, encoded once per message
+    private volatile DefaultPage defaultPage;
     
     public MaintenanceMiddleware(MaintenanceManager maintenanceManager) {
         this.maintenanceManager = maintenanceManager;
     }
     
+    /**
+     * Serves {@link #PAGE} from the static file cache, where it is kept in
+     * memory and refreshed when the file changes
+     */
+    public void setStaticFiles(StaticFileCache staticFiles) {
+        this.staticFiles = staticFiles;
+    }
+    
     @Override
     public void handle(Request request, Response response, Runnable next) throws Exception {
         // Allow health check endpoints during maintenance
@@ -24,14 +40,15 @@ public class MaintenanceMiddleware implements Middleware {
         
         if (maintenanceManager.isMaintenanceModeEnabled()) {
             response.status(503);
-            response.header("Content-Type", "text/html; charset=UTF-8");
             response.header("Retry-After", "3600");
             
-            try {
-                String maintenanceHtml = loadMaintenanceHtml();
-                response.send(maintenanceHtml);
-            } catch (Exception e) {
-                response.send("<h1>Service Unavailable</h1><p>" + maintenanceManager.getMaintenanceMessage() + "</p>");
+            // Retry storms hit this path; both pages go out from memory
+            StaticAsset page = findMaintenancePage();
+            if (page != null) {
+                page.send(request, response);
+            } else {
+                response.header("Content-Type", "text/html; charset=UTF-8");
+                response.send(getDefaultMaintenanceHtml());
             }
             return;
         }
@@ -39,23 +56,43 @@ public class MaintenanceMiddleware implements Middleware {
         next.run();
     }
     
-    private String loadMaintenanceHtml() throws IOException {
-        String htmlPath = "public/maintenance.html";
-        if (Files.exists(Paths.get(htmlPath))) {
-            return new String(Files.readAllBytes(Paths.get(htmlPath)));
+    private StaticAsset findMaintenancePage() {
+        StaticFileCache cache = staticFiles;
+        if (cache == null) {
+            return null;
+        }
+        try {
+            return cache.get(cache.getRoot().resolve(PAGE));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    private byte[] getDefaultMaintenanceHtml() {
+        String message = maintenanceManager.getMaintenanceMessage();
+        DefaultPage page = defaultPage;
+        if (page == null || !Objects.equals(page.message, message)) {
+            page = new DefaultPage(message, ("<!DOCTYPE html>\n" +
+                "<html>\n" +
+                "<head>\n" +
+                "  <title>Maintenance</title>\n" +
+                "</head>\n" +
+                "<body>\n" +
+                "  <h1>" + message + "</h1>\n" +
+                "</body>\n" +
+                "</html>").getBytes(StandardCharsets.UTF_8));
+            defaultPage = page;
         }
-        return getDefaultMaintenanceHtml();
+        return page.html;
     }
     
-    private String getDefaultMaintenanceHtml() {
-        return "<!DOCTYPE html>\n" +
-            "<html>\n" +
-            "<head>\n" +
-            "  <title>Maintenance</title>\n" +
-            "</head>\n" +
-            "<body>\n" +
-            "  <h1>" + maintenanceManager.getMaintenanceMessage() + "</h1>\n" +
-            "</body>\n" +
-            "</html>";
+    private static final class DefaultPage {
+        final String message;
+        final byte[] html;
+        
+        DefaultPage(String message, byte[] html) {
+            this.message = message;
+            this.html = html;
+        }
     }
 }
@@ -0,0 +1,40 @@
+package com.mwu.middleware;
+
+import com.mwu.routing.Compression;
+import com.mwu.routing.Request;
+import com.mwu.routing.Response;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compresses dynamic response bodies (JSON, HTML, text, ...) with gzip or
+ * deflate, whichever the client accepts, once they reach a minimum size.
+ * Smaller bodies are not worth the CPU or the encoding overhead. Static
+ * files are not affected; they use their precompressed variants.
+ */
+public class CompressionMiddleware implements Middleware {
+    private static final int DEFAULT_MIN_SIZE = 1024;
+    
+    private final int minSize;
+    private final int level;
+    
+    public CompressionMiddleware() {
+        this(DEFAULT_MIN_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+    
+    /**
+     * @param minSize smallest body, in bytes, to compress
+     * @param level   {@link Deflater} level, 1 (fastest) to 9 (smallest)
+     */
+    public CompressionMiddleware(int minSize, int level) {
+        this.minSize = minSize;
+        this.level = level;
+    }
+    
+    @Override
+    public void handle(Request request, Response response, Runnable next) throws Exception {
+        response.compress(Compression.negotiate(request.getHeader("Accept-Encoding")), minSize, level);
+        
+        next.run();
+    }
+}
@@ -0,0 +1,19 @@
+package com.mwu.middleware;
+
+import com.mwu.routing.Request;
+import com.mwu.routing.Response;
+
+/**
+ * Adds body ETags to dynamic responses and answers revalidations with
+ * 304 Not Modified. Opt-in, since it costs a digest of every body sent:
+ * register it for routes whose output is worth revalidating, e.g.
+ * {@code app.use("/api", new ETagMiddleware())}.
+ */
+public class ETagMiddleware implements Middleware {
+    @Override
+    public void handle(Request request, Response response, Runnable next) throws Exception {
+        response.conditional(request);
+        
+        next.run();
+    }
+}
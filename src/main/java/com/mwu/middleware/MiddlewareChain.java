@@ -2,6 +2,7 @@ package com.mwu.middleware;
 
 import com.mwu.routing.Request;
 import com.mwu.routing.Response;
+import com.mwu.routing.RouteHandler;
 import java.util.*;
 
 public class MiddlewareChain {
@@ -19,6 +20,32 @@ public class MiddlewareChain {
         return middlewares.size();
     }
     
+    public List<Middleware> getMiddlewares() {
+        return Collections.unmodifiableList(middlewares);
+    }
+    
+    /**
+     * Wraps a handler in a fixed list of middleware, first one outermost,
+     * once up front rather than walking the list on every request
+     */
+    public static RouteHandler compose(List<Middleware> middlewares, RouteHandler handler) {
+        RouteHandler composed = handler;
+        for (int i = middlewares.size() - 1; i >= 0; i--) {
+            Middleware middleware = middlewares.get(i);
+            RouteHandler inner = composed;
+            composed = (request, response) -> middleware.handle(request, response, () -> {
+                try {
+                    inner.handle(request, response);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        return composed;
+    }
+    
     private static class Chain {
         private final List<Middleware> middlewares;
         private final Runnable finalHandler;
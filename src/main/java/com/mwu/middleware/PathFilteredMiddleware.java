@@ -15,6 +15,30 @@ public class PathFilteredMiddleware implements Middleware {
         this.middleware = middleware;
     }
     
+    /**
+     * The middleware to run for every request a route pattern matches:
+     * the wrapped middleware if all of its paths are under the prefix,
+     * null if none are, or this filter if it depends on the parameters
+     */
+    public Middleware resolveFor(String routePattern) {
+        int dynamic = routePattern.length();
+        for (String marker : new String[] { "/:", "/*" }) {
+            int index = routePattern.indexOf(marker);
+            if (index != -1 && index + 1 < dynamic) {
+                dynamic = index + 1;
+            }
+        }
+        if (dynamic == routePattern.length()) {
+            // Literal route: only ever this exact path
+            return routePattern.startsWith(pathPrefix) ? middleware : null;
+        }
+        String literal = routePattern.substring(0, dynamic);
+        if (literal.startsWith(pathPrefix)) {
+            return middleware;
+        }
+        return pathPrefix.startsWith(literal) ? this : null;
+    }
+    
     @Override
     public void handle(Request request, Response response, Runnable next) throws Exception {
         if (request.getPath().startsWith(pathPrefix)) {
@@ -3,13 +3,15 @@ package com.mwu.middleware;
 import com.mwu.routing.Request;
 import com.mwu.routing.Response;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Rate limiting middleware - limits requests per IP address
  */
 public class RateLimitMiddleware implements Middleware {
     private final int requestsPerMinute;
-    private final Map<String, RateLimiter> limiters = new HashMap<>();
+    private final Map<String, RateLimiter> limiters = new ConcurrentHashMap<>();
     
     public RateLimitMiddleware(int requestsPerMinute) {
         this.requestsPerMinute = requestsPerMinute;
@@ -35,25 +37,32 @@ public class RateLimitMiddleware implements Middleware {
         private final int maxRequests;
         private final Queue<Long> requestTimes = new LinkedList<>();
         private final long windowMs = 60000; // 1 minute
+        // Explicit lock rather than synchronized so virtual threads don't pin their carrier
+        private final ReentrantLock lock = new ReentrantLock();
         
         RateLimiter(int maxRequests) {
             this.maxRequests = maxRequests;
         }
         
-        synchronized boolean allowRequest() {
+        boolean allowRequest() {
             long now = System.currentTimeMillis();
             
-            // Remove old requests outside the window
-            while (!requestTimes.isEmpty() && now - requestTimes.peek() > windowMs) {
-                requestTimes.poll();
+            lock.lock();
+            try {
+                // Remove old requests outside the window
+                while (!requestTimes.isEmpty() && now - requestTimes.peek() > windowMs) {
+                    requestTimes.poll();
+                }
+                
+                if (requestTimes.size() < maxRequests) {
+                    requestTimes.offer(now);
+                    return true;
+                }
+                
+                return false;
+            } finally {
+                lock.unlock();
             }
-            
-            if (requestTimes.size() < maxRequests) {
-                requestTimes.offer(now);
-                return true;
-            }
-            
-            return false;
         }
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.mwu.middleware;
 
+import com.mwu.routing.HeaderBlock;
 import com.mwu.routing.Request;
 import com.mwu.routing.Response;
 
@@ -7,12 +8,16 @@ import com.mwu.routing.Response;
  * Adds security headers to all responses
  */
 public class SecurityHeadersMiddleware implements Middleware {
+    // Encoded once; handlers can still override any of these per response
+    private static final HeaderBlock SECURITY_HEADERS = HeaderBlock.of(
+            "X-Content-Type-Options", "nosniff",
+            "X-Frame-Options", "DENY",
+            "X-XSS-Protection", "1; mode=block",
+            "Referrer-Policy", "strict-origin-when-cross-origin");
+    
     @Override
     public void handle(Request request, Response response, Runnable next) throws Exception {
-        response.header("X-Content-Type-Options", "nosniff");
-        response.header("X-Frame-Options", "DENY");
-        response.header("X-XSS-Protection", "1; mode=block");
-        response.header("Referrer-Policy", "strict-origin-when-cross-origin");
+        response.headers(SECURITY_HEADERS);
         
         next.run();
     }
@@ -0,0 +1,157 @@
+package com.mwu.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One satisfiable range from a "Range: bytes=..." header, resolved against
+ * the representation size.
+ */
+public final class ByteRange {
+    /** More ranges than this (after merging) are ignored and the full body is sent */
+    private static final int MAX_RANGES = 16;
+    
+    private final long start;
+    private final long end; // inclusive
+    
+    ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+    
+    public long getStart() {
+        return start;
+    }
+    
+    public long getEnd() {
+        return end;
+    }
+    
+    public long getLength() {
+        return end - start + 1;
+    }
+    
+    /**
+     * Content-Range value, e.g. "bytes 0-499/1234"
+     */
+    String contentRange(long size) {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+    
+    /**
+     * Parses a Range header value for a body of {@code size} bytes.
+     * Overlapping and adjacent ranges are merged.
+     *
+     * @return the ranges to send; an empty list if none is satisfiable
+     *         (416); or null if the header should be ignored and the full
+     *         body sent (not a byte range, malformed, or too many ranges)
+     */
+    public static List<ByteRange> parse(String header, long size) {
+        if (header == null || header.length() < 6 || !header.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<>();
+        int count = 0;
+        for (String spec : header.substring(6).split(",")) {
+            spec = spec.trim();
+            if (spec.isEmpty()) {
+                continue;
+            }
+            if (++count > MAX_RANGES * 4) {
+                return null;
+            }
+            int dash = spec.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+            long first = parseNumber(spec.substring(0, dash).trim());
+            long last = parseNumber(spec.substring(dash + 1).trim());
+            if (dash == 0) {
+                // Suffix range: the last N bytes
+                if (last < 0) {
+                    return null;
+                }
+                if (last > 0 && size > 0) {
+                    ranges.add(new ByteRange(Math.max(0, size - last), size - 1));
+                }
+            } else {
+                if (first < 0 || (dash < spec.length() - 1 && last < first)) {
+                    return null;
+                }
+                if (first < size) {
+                    long end = last < 0 ? size - 1 : Math.min(last, size - 1);
+                    ranges.add(new ByteRange(first, end));
+                }
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        List<ByteRange> merged = merge(ranges);
+        return merged.size() > MAX_RANGES ? null : merged;
+    }
+    
+    /**
+     * Whether an If-Range value still matches the representation, so the
+     * Range header applies. Entity tags must match strongly; dates must
+     * equal Last-Modified exactly.
+     */
+    public static boolean ifRangeMatches(String ifRange, String etag, String lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        if (ifRange.startsWith("\"")) {
+            return etag != null && !etag.startsWith("W/") && etag.equals(ifRange);
+        }
+        return lastModified != null && lastModified.equals(ifRange);
+    }
+    
+    private static List<ByteRange> merge(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort((a, b) -> Long.compare(a.start, b.start));
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            ByteRange next = sorted.get(i);
+            if (next.start <= current.end + 1) {
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return Collections.unmodifiableList(merged);
+    }
+    
+    /**
+     * @return the value, or -1 if empty or not a plain decimal number
+     */
+    private static long parseNumber(String digits) {
+        if (digits.isEmpty() || digits.length() > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    @Override
+    public String toString() {
+        return start + "-" + end;
+    }
+}
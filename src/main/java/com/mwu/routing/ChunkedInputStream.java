@@ -0,0 +1,130 @@
+package com.mwu.routing;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a Transfer-Encoding: chunked request body, enforcing the
+ * maximum request size as data streams through.
+ */
+class ChunkedInputStream extends InputStream {
+    private static final int MAX_LINE_LENGTH = 4096;
+    
+    private final InputStream source;
+    private final long maxSize;
+    private long chunkRemaining = 0;
+    private long total = 0;
+    private boolean finished = false;
+    
+    ChunkedInputStream(InputStream source, long maxSize) {
+        this.source = source;
+        this.maxSize = maxSize;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        int b = source.read();
+        if (b == -1) {
+            throw new HttpParseException(400, "Incomplete chunked body");
+        }
+        chunkRemaining--;
+        return b;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int read = source.read(b, off, (int) Math.min(len, chunkRemaining));
+        if (read == -1) {
+            throw new HttpParseException(400, "Incomplete chunked body");
+        }
+        chunkRemaining -= read;
+        return read;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        return finished ? 0 : (int) Math.min(source.available(), chunkRemaining);
+    }
+    
+    @Override
+    public void close() {
+        // The connection outlives the body; unread bytes are discarded by the engine
+    }
+    
+    /**
+     * Moves to the next chunk if the current one is exhausted.
+     *
+     * @return false once the last chunk and trailers have been read
+     */
+    private boolean nextChunk() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (chunkRemaining > 0) {
+            return true;
+        }
+        if (total > 0) {
+            // CRLF that terminates the previous chunk's data
+            if (!readLine().isEmpty()) {
+                throw new HttpParseException(400, "Malformed chunk");
+            }
+        }
+        
+        String sizeLine = readLine();
+        int extension = sizeLine.indexOf(';');
+        if (extension != -1) {
+            sizeLine = sizeLine.substring(0, extension);
+        }
+        long size;
+        try {
+            size = Long.parseLong(sizeLine.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new HttpParseException(400, "Malformed chunk size");
+        }
+        if (size < 0) {
+            throw new HttpParseException(400, "Malformed chunk size");
+        }
+        
+        if (size == 0) {
+            // Skip trailer fields up to the terminating blank line
+            while (!readLine().isEmpty()) {
+                // Trailers are not exposed
+            }
+            finished = true;
+            return false;
+        }
+        
+        total += size;
+        if (total > maxSize) {
+            throw new HttpParseException(413, "Payload Too Large");
+        }
+        chunkRemaining = size;
+        return true;
+    }
+    
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = source.read()) != '\n') {
+            if (b == -1) {
+                throw new HttpParseException(400, "Incomplete chunked body");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+            if (line.length() > MAX_LINE_LENGTH) {
+                throw new HttpParseException(400, "Chunk line too long");
+            }
+        }
+        return line.toString();
+    }
+}
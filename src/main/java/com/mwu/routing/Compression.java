@@ -0,0 +1,134 @@
+package com.mwu.routing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings (gzip, deflate) and the rules for when to use them.
+ */
+public final class Compression {
+    private Compression() {
+    }
+    
+    /**
+     * Whether a body of this type is worth compressing. Images, video,
+     * archives and fonts (other than SVG) are already compressed.
+     */
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int semicolon = type.indexOf(';');
+        if (semicolon != -1) {
+            type = type.substring(0, semicolon).trim();
+        }
+        return type.startsWith("text/")
+                || type.equals("application/json")
+                || type.endsWith("+json")
+                || type.equals("application/javascript")
+                || type.equals("application/x-javascript")
+                || type.equals("application/xml")
+                || type.endsWith("+xml")
+                || type.equals("application/wasm")
+                || type.equals("application/x-ndjson");
+    }
+    
+    /**
+     * The coding to use for a response, from the request's Accept-Encoding
+     *
+     * @return "gzip", "deflate", or null for identity
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (accepts(acceptEncoding, "gzip")) {
+            return "gzip";
+        }
+        if (accepts(acceptEncoding, "deflate")) {
+            return "deflate";
+        }
+        return null;
+    }
+    
+    /**
+     * Whether an Accept-Encoding value allows a coding, honouring q=0 and "*"
+     */
+    public static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String name = parts[0].trim();
+            boolean allowed = true;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        allowed = Double.parseDouble(param.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        allowed = false;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(coding) || (coding.equals("gzip") && name.equalsIgnoreCase("x-gzip"))) {
+                return allowed;
+            }
+            if (name.equals("*")) {
+                wildcard = allowed;
+            }
+        }
+        return wildcard != null && wildcard;
+    }
+    
+    /**
+     * Compresses a body with "gzip" or "deflate" at the given
+     * {@link Deflater} level
+     */
+    public static byte[] encode(byte[] content, String coding, int level) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+        Deflater deflater = "gzip".equals(coding) ? null : new Deflater(level);
+        try (OutputStream out = deflater == null
+                ? new LevelGzipOutputStream(buffer, level)
+                : new DeflaterOutputStream(buffer, deflater)) {
+            out.write(content);
+        } catch (IOException e) {
+            // Not possible with an in-memory buffer
+            throw new UncheckedIOException(e);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        return buffer.toByteArray();
+    }
+    
+    /**
+     * Appends Accept-Encoding to an existing Vary value
+     */
+    static String varyWithAcceptEncoding(String vary) {
+        if (vary == null || vary.isEmpty()) {
+            return "Accept-Encoding";
+        }
+        if (vary.equals("*") || vary.toLowerCase(Locale.ROOT).contains("accept-encoding")) {
+            return vary;
+        }
+        return vary + ", Accept-Encoding";
+    }
+    
+    /**
+     * GZIPOutputStream with a chosen compression level
+     */
+    private static final class LevelGzipOutputStream extends GZIPOutputStream {
+        LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+}
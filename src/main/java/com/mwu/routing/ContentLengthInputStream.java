@@ -0,0 +1,57 @@
+package com.mwu.routing;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Request body framed by Content-Length. Never reads past the end of the
+ * body, so the connection can carry on with the next request.
+ */
+class ContentLengthInputStream extends InputStream {
+    private final InputStream source;
+    private long remaining;
+    
+    ContentLengthInputStream(InputStream source, long length) {
+        this.source = source;
+        this.remaining = length;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int b = source.read();
+        if (b == -1) {
+            throw new HttpParseException(400, "Incomplete request body");
+        }
+        remaining--;
+        return b;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int read = source.read(b, off, (int) Math.min(len, remaining));
+        if (read == -1) {
+            throw new HttpParseException(400, "Incomplete request body");
+        }
+        remaining -= read;
+        return read;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(source.available(), remaining);
+    }
+    
+    @Override
+    public void close() {
+        // The connection outlives the body; unread bytes are discarded by the engine
+    }
+}
@@ -0,0 +1,20 @@
+package com.mwu.routing;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Connection channel that can take file data directly, so the engine can
+ * hand the real socket to {@link FileChannel#transferTo} (sendfile) while
+ * still applying its own timeouts and back-pressure.
+ */
+public interface FileTransferTarget {
+    /**
+     * Transfers up to {@code count} bytes starting at {@code position},
+     * blocking until at least one byte has been written.
+     *
+     * @return number of bytes written, 0 only if the file has no more data
+     *         at that position
+     */
+    long transferFrom(FileChannel file, long position, long count) throws IOException;
+}
@@ -0,0 +1,66 @@
+package com.mwu.routing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed set of response headers encoded once up front, for headers that are
+ * the same on every response (server name, security headers). Responses
+ * copy the encoded bytes as a whole; a header set on the response itself
+ * takes precedence over the block's value.
+ */
+public final class HeaderBlock {
+    private final String[] names;
+    private final String[] values;
+    private final byte[] encoded;
+    
+    private HeaderBlock(String[] names, String[] values) {
+        this.names = names;
+        this.values = values;
+        StringBuilder block = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            block.append(names[i]).append(": ").append(values[i]).append("\r\n");
+        }
+        this.encoded = block.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * @param namesAndValues alternating header names and values
+     */
+    public static HeaderBlock of(String... namesAndValues) {
+        if (namesAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Header names and values must come in pairs");
+        }
+        String[] names = new String[namesAndValues.length / 2];
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = namesAndValues[i * 2];
+            values[i] = namesAndValues[i * 2 + 1];
+        }
+        return new HeaderBlock(names, values);
+    }
+    
+    public String get(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+    
+    int size() {
+        return names.length;
+    }
+    
+    String nameAt(int index) {
+        return names[index];
+    }
+    
+    String valueAt(int index) {
+        return values[index];
+    }
+    
+    byte[] encoded() {
+        return encoded;
+    }
+}
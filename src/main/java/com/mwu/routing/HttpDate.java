@@ -0,0 +1,89 @@
+package com.mwu.routing;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * HTTP dates (RFC 7231 IMF-fixdate, e.g. "Sun, 06 Nov 1994 08:49:37 GMT").
+ *
+ * The current date is shared by every response and rendered at most once
+ * per second, together with its encoded "Date: ...\r\n" header line.
+ */
+public final class HttpDate {
+    private static final DateTimeFormatter FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+    
+    private static final DateTimeFormatter RFC_850 =
+            DateTimeFormatter.ofPattern("EEEE, dd-MMM-yy HH:mm:ss zzz", Locale.US);
+    
+    private static volatile Snapshot current = new Snapshot(System.currentTimeMillis() / 1000);
+    
+    private HttpDate() {
+    }
+    
+    public static String format(long epochMillis) {
+        return FORMAT.format(Instant.ofEpochMilli(epochMillis));
+    }
+    
+    /**
+     * Parses an HTTP date in IMF-fixdate or obsolete RFC 850 form
+     *
+     * @return epoch milliseconds, or -1 if the value is not a valid date
+     */
+    public static long parse(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return ZonedDateTime.parse(value.trim(), RFC_850).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+    
+    /**
+     * Current date, cached for the second
+     */
+    public static String now() {
+        return snapshot().value;
+    }
+    
+    /**
+     * Encoded "Date: ...\r\n" header line for the current second
+     */
+    static byte[] headerLine() {
+        return snapshot().headerLine;
+    }
+    
+    private static Snapshot snapshot() {
+        long second = System.currentTimeMillis() / 1000;
+        Snapshot snapshot = current;
+        if (snapshot.second != second) {
+            // Racing threads render the same value; last write wins
+            snapshot = new Snapshot(second);
+            current = snapshot;
+        }
+        return snapshot;
+    }
+    
+    private static final class Snapshot {
+        final long second;
+        final String value;
+        final byte[] headerLine;
+        
+        Snapshot(long second) {
+            this.second = second;
+            this.value = format(second * 1000);
+            this.headerLine = ("Date: " + value + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+}
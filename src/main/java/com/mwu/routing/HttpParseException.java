@@ -0,0 +1,22 @@
+package com.mwu.routing;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request cannot be parsed. Carries the status code that
+ * should be sent back before the connection is closed.
+ */
+public class HttpParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+    
+    private final int statusCode;
+    
+    public HttpParseException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+    
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,338 @@
+package com.mwu.routing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming multipart/form-data parser.
+ *
+ * Reads the body through a fixed-size window, so memory use per upload is
+ * bounded by the window plus the in-memory threshold no matter how large
+ * the files are. Each part is read completely before {@link #next()}
+ * returns it; parts larger than the threshold are spilled to temporary
+ * files, which {@link #close()} deletes.
+ */
+public class MultipartParser implements Iterator<Part>, Closeable {
+    private static final int WINDOW_SIZE = 16 * 1024;
+    private static final int MAX_PART_HEADER_SIZE = 8 * 1024;
+    private static final int MAX_PARTS = 1000;
+
+    private final InputStream input;
+    private final byte[] delimiter; // CRLF "--" boundary
+    private final long memoryThreshold;
+    private final Path uploadDirectory;
+    private final List<Part> parts = new ArrayList<>();
+
+    private final byte[] window;
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    private boolean started;
+    private boolean finished;
+    private Part nextPart;
+
+    /**
+     * @param input           the request body
+     * @param boundary        boundary parameter from the Content-Type header
+     * @param memoryThreshold part size above which content goes to disk
+     * @param uploadDirectory where to create temporary files, or null for
+     *                        the system default
+     */
+    public MultipartParser(InputStream input, String boundary, long memoryThreshold, Path uploadDirectory) {
+        if (boundary == null || boundary.isEmpty() || boundary.length() > 70) {
+            throw new IllegalArgumentException("Invalid multipart boundary");
+        }
+        this.input = input;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        this.memoryThreshold = memoryThreshold;
+        this.uploadDirectory = uploadDirectory;
+        this.window = new byte[Math.max(WINDOW_SIZE, delimiter.length * 2)];
+
+        // The first delimiter has no leading CRLF; pretend it does
+        window[0] = '\r';
+        window[1] = '\n';
+        limit = 2;
+    }
+
+    /**
+     * Extracts the boundary parameter from a multipart Content-Type value,
+     * or returns null if there is none.
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String boundary = parameters(contentType).get("boundary");
+        return boundary == null || boundary.isEmpty() ? null : boundary;
+    }
+
+    // ==================== Iteration ====================
+
+    /**
+     * @throws UncheckedIOException wrapping an {@link HttpParseException}
+     *         for malformed bodies, or the underlying read error
+     */
+    @Override
+    public boolean hasNext() {
+        if (nextPart == null && !finished) {
+            try {
+                nextPart = readPart();
+            } catch (IOException e) {
+                finished = true;
+                throw new UncheckedIOException(e);
+            }
+        }
+        return nextPart != null;
+    }
+
+    @Override
+    public Part next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Part part = nextPart;
+        nextPart = null;
+        return part;
+    }
+
+    /**
+     * Deletes the temporary files of every part read so far, except those
+     * moved away with {@link Part#transferTo(Path)}
+     */
+    @Override
+    public void close() {
+        for (Part part : parts) {
+            part.delete();
+        }
+        parts.clear();
+    }
+
+    private Part readPart() throws IOException {
+        if (!started) {
+            // Skip the preamble up to the first delimiter
+            started = true;
+            if (!skipToDelimiter()) {
+                throw new HttpParseException(400, "Multipart boundary not found");
+            }
+        }
+        if (afterDelimiter()) {
+            finished = true;
+            return null;
+        }
+        if (parts.size() >= MAX_PARTS) {
+            throw new HttpParseException(413, "Too many multipart parts");
+        }
+
+        Map<String, String> headers = readPartHeaders();
+        Map<String, String> disposition = parameters(headers.getOrDefault("content-disposition", ""));
+        Part part = new Part(disposition.get("name"), disposition.get("filename"),
+                headers.get("content-type"), headers);
+        parts.add(part);
+
+        try {
+            readContent(part);
+        } finally {
+            part.finish();
+        }
+        return part;
+    }
+
+    /**
+     * Consumes what follows a delimiter: "--" for the last one, or optional
+     * whitespace and CRLF before the next part's headers.
+     *
+     * @return true if this was the closing delimiter
+     */
+    private boolean afterDelimiter() throws IOException {
+        if (!ensure(2)) {
+            throw new HttpParseException(400, "Truncated multipart body");
+        }
+        if (window[pos] == '-' && window[pos + 1] == '-') {
+            pos += 2;
+            return true;
+        }
+        while (ensure(1) && (window[pos] == ' ' || window[pos] == '\t')) {
+            pos++;
+        }
+        if (!ensure(2) || window[pos] != '\r' || window[pos + 1] != '\n') {
+            throw new HttpParseException(400, "Malformed multipart delimiter");
+        }
+        pos += 2;
+        return false;
+    }
+
+    private Map<String, String> readPartHeaders() throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        int consumed = 0;
+        while (true) {
+            int lineEnd = indexOfCrlf();
+            while (lineEnd == -1) {
+                if (limit - pos >= MAX_PART_HEADER_SIZE || !fill()) {
+                    throw new HttpParseException(400, "Malformed multipart headers");
+                }
+                lineEnd = indexOfCrlf();
+            }
+            consumed += lineEnd + 2 - pos;
+            if (consumed > MAX_PART_HEADER_SIZE) {
+                throw new HttpParseException(431, "Multipart headers too large");
+            }
+            if (lineEnd == pos) {
+                pos += 2;
+                return headers;
+            }
+            String line = new String(window, pos, lineEnd - pos, StandardCharsets.UTF_8);
+            pos = lineEnd + 2;
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new HttpParseException(400, "Malformed multipart header");
+            }
+            headers.putIfAbsent(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+    }
+
+    private void readContent(Part part) throws IOException {
+        while (true) {
+            int match = indexOfDelimiter();
+            if (match != -1) {
+                part.append(window, pos, match - pos, memoryThreshold, uploadDirectory);
+                pos = match + delimiter.length;
+                return;
+            }
+            // Everything except a possible partial delimiter at the end is content
+            int safe = Math.max(pos, limit - delimiter.length + 1);
+            part.append(window, pos, safe - pos, memoryThreshold, uploadDirectory);
+            pos = safe;
+            if (!fill()) {
+                throw new HttpParseException(400, "Truncated multipart body");
+            }
+        }
+    }
+
+    private boolean skipToDelimiter() throws IOException {
+        while (true) {
+            int match = indexOfDelimiter();
+            if (match != -1) {
+                pos = match + delimiter.length;
+                return true;
+            }
+            pos = Math.max(pos, limit - delimiter.length + 1);
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    // ==================== Window ====================
+
+    private boolean ensure(int count) throws IOException {
+        while (limit - pos < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compacts the window and reads more data into it
+     *
+     * @return false at end of stream
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(window, pos, window, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == window.length) {
+            return false;
+        }
+        int read = input.read(window, limit, window.length - limit);
+        if (read == -1) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = pos; i <= last; i++) {
+            if (window[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < delimiter.length; j++) {
+                if (window[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private int indexOfCrlf() {
+        for (int i = pos; i < limit - 1; i++) {
+            if (window[i] == '\r' && window[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses "value; key=value; key="quoted value"" into lower-case keys
+     */
+    private static Map<String, String> parameters(String header) {
+        Map<String, String> params = new LinkedHashMap<>();
+        int i = header.indexOf(';');
+        while (i != -1 && i < header.length()) {
+            int start = i + 1;
+            int equals = header.indexOf('=', start);
+            if (equals == -1) {
+                break;
+            }
+            String key = header.substring(start, equals).trim().toLowerCase(Locale.ROOT);
+            int valueStart = equals + 1;
+            String value;
+            if (valueStart < header.length() && header.charAt(valueStart) == '"') {
+                StringBuilder quoted = new StringBuilder();
+                int j = valueStart + 1;
+                while (j < header.length() && header.charAt(j) != '"') {
+                    char c = header.charAt(j);
+                    if (c == '\\' && j + 1 < header.length()) {
+                        c = header.charAt(++j);
+                    }
+                    quoted.append(c);
+                    j++;
+                }
+                value = quoted.toString();
+                i = header.indexOf(';', j);
+            } else {
+                int end = header.indexOf(';', valueStart);
+                value = header.substring(valueStart, end == -1 ? header.length() : end).trim();
+                i = end;
+            }
+            params.putIfAbsent(key, value);
+        }
+        return params;
+    }
+}
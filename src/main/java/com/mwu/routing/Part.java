@@ -0,0 +1,212 @@
+package com.mwu.routing;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One part of a multipart/form-data body.
+ *
+ * Content up to the memory threshold is kept on the heap; anything larger
+ * is written straight to a temporary file. Temporary files are deleted
+ * once the response has been sent unless the part was moved with
+ * {@link #transferTo(Path)}.
+ */
+public class Part {
+    private final String name;
+    private final String fileName;
+    private final String contentType;
+    private final Map<String, String> headers;
+
+    private byte[] memory;
+    private int memoryLength;
+    private Path file;
+    private FileChannel fileChannel;
+    private long size;
+
+    Part(String name, String fileName, String contentType, Map<String, String> headers) {
+        this.name = name;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.headers = Collections.unmodifiableMap(headers);
+    }
+
+    // ==================== Writing (used by MultipartParser) ====================
+
+    void append(byte[] data, int off, int len, long threshold, Path directory) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (fileChannel == null && memoryLength + len > threshold) {
+            spill(directory);
+        }
+        if (fileChannel != null) {
+            ByteBuffer buffer = ByteBuffer.wrap(data, off, len);
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer);
+            }
+        } else {
+            if (memory == null) {
+                memory = new byte[Math.max(len, 256)];
+            } else if (memoryLength + len > memory.length) {
+                memory = Arrays.copyOf(memory, Math.max(memory.length * 2, memoryLength + len));
+            }
+            System.arraycopy(data, off, memory, memoryLength, len);
+            memoryLength += len;
+        }
+        size += len;
+    }
+
+    private void spill(Path directory) throws IOException {
+        file = directory != null
+                ? Files.createTempFile(directory, "mwu-upload-", ".part")
+                : Files.createTempFile("mwu-upload-", ".part");
+        fileChannel = FileChannel.open(file, StandardOpenOption.WRITE);
+        if (memoryLength > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(memory, 0, memoryLength);
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer);
+            }
+        }
+        memory = null;
+        memoryLength = 0;
+    }
+
+    void finish() throws IOException {
+        if (fileChannel != null) {
+            fileChannel.close();
+            fileChannel = null;
+        }
+    }
+
+    // ==================== Accessors ====================
+
+    /**
+     * Form field name from Content-Disposition
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Client-supplied file name, or null for plain form fields
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Part header by lower-case name
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isFile() {
+        return fileName != null;
+    }
+
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * Temporary file holding the content, or null if it is in memory
+     */
+    public Path getPath() {
+        return file;
+    }
+
+    /**
+     * Returns the content as bytes. For spilled parts this reads the whole
+     * file, so prefer {@link #getInputStream()} for uploads.
+     */
+    public byte[] getBytes() throws IOException {
+        if (file != null) {
+            return Files.readAllBytes(file);
+        }
+        return memory == null ? new byte[0] : Arrays.copyOf(memory, memoryLength);
+    }
+
+    public String getString() throws IOException {
+        return new String(getBytes(), StandardCharsets.UTF_8);
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if (file != null) {
+            return Files.newInputStream(file);
+        }
+        return new ByteArrayInputStream(memory == null ? new byte[0] : memory, 0, memoryLength);
+    }
+
+    /**
+     * Writes the content to its final location. A spilled part is moved
+     * (renamed where possible) rather than copied, after which the part no
+     * longer holds any content and nothing is left to clean up.
+     */
+    public void transferTo(Path target) throws IOException {
+        if (file != null) {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+            file = null;
+            memory = new byte[0];
+            return;
+        }
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(memory == null ? new byte[0] : memory, 0, memoryLength);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary file, if any
+     */
+    public void delete() {
+        try {
+            finish();
+        } catch (IOException ignored) {
+            // Deleting anyway
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Best effort; the temp directory is cleaned by the OS
+            }
+            file = null;
+        }
+        memory = null;
+        memoryLength = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Part{name='" + name + "', fileName='" + fileName + "', size=" + size
+                + (file != null ? ", spilled" : "") + "}";
+    }
+}
@@ -0,0 +1,80 @@
+package com.mwu.routing;
+
+/**
+ * Evaluation of If-None-Match and If-Modified-Since (RFC 9110 section 13)
+ * against a response's validators.
+ */
+final class Preconditions {
+    private Preconditions() {
+    }
+    
+    /**
+     * Whether the client's cached copy is still current, so a 304 can be
+     * sent instead of the body. If-None-Match takes precedence;
+     * If-Modified-Since is only consulted without it.
+     *
+     * @param etag         the response's entity tag, or null
+     * @param lastModified the response's Last-Modified value, or null
+     */
+    static boolean notModified(Request request, String etag, String lastModified) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return etag != null && matchesAny(ifNoneMatch, etag);
+        }
+        
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince == null || lastModified == null) {
+            return false;
+        }
+        if (ifModifiedSince.equals(lastModified)) {
+            return true;
+        }
+        long since = HttpDate.parse(ifModifiedSince);
+        long modified = HttpDate.parse(lastModified);
+        return since != -1 && modified != -1 && modified <= since;
+    }
+    
+    /**
+     * Weak comparison of an entity tag against an If-None-Match list
+     */
+    private static boolean matchesAny(String list, String etag) {
+        String opaque = opaque(etag);
+        int i = 0;
+        int length = list.length();
+        while (i < length) {
+            char c = list.charAt(i);
+            if (c == ' ' || c == '\t' || c == ',') {
+                i++;
+                continue;
+            }
+            if (c == '*') {
+                return true;
+            }
+            int start = i;
+            if (list.startsWith("W/", i)) {
+                i += 2;
+            }
+            if (i >= length || list.charAt(i) != '"') {
+                return false; // malformed
+            }
+            int close = list.indexOf('"', i + 1);
+            if (close == -1) {
+                return false;
+            }
+            if (opaque(list.substring(start, close + 1)).equals(opaque)) {
+                return true;
+            }
+            i = close + 1;
+        }
+        return false;
+    }
+    
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
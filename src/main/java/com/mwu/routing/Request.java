@@ -1,118 +1,115 @@
 package com.mwu.routing;
 
+import com.mwu.config.MWUConfig;
+
 import java.io.*;
 import java.net.Socket;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
- * HTTP Request wrapper with modern conveniences
+ * HTTP Request wrapper with modern conveniences.
+ *
+ * Holds the raw request head as received and decodes headers, query
+ * parameters and cookies on first access, caching the result, so a
+ * handler only pays for what it reads.
  */
 public class Request {
     private String method;
-    private String path;
-    private String queryString;
     private String protocol;
-    private Map<String, String> headers;
-    private Map<String, String> queryParams;
-    private Map<String, String> pathParams;
     private byte[] body;
     private String bodyString;
     private Socket socket;
     
+    // Body framing, read lazily from the connection
+    private InputStream bodyStream;
+    private OutputStream interimOutput;
+    private boolean expectContinue;
+    private boolean continueSent;
+    private boolean streamRequested;
+    
+    // Multipart uploads
+    private int multipartMemoryThreshold;
+    private Path uploadDirectory;
+    private MultipartParser multipart;
+    
+    // Raw request head plus offsets recorded by the parser
+    private byte[] head;
+    private int targetStart;
+    private int pathEnd;
+    private int targetEnd;
+    private int[] headerOffsets;
+    private int headerCount;
+    
+    // Decoded on demand
+    private String path;
+    private String queryString;
+    private String[] headerValues;
+    private Map<String, String> headers;
+    private Map<String, List<String>> queryCache;
+    private Map<String, String> queryParams;
+    private Map<String, String> cookies;
+    private Map<String, String> pathParams = Collections.emptyMap();
+    private RouteMatch routeMatch;
+    
     // Request context for middleware
     private Map<String, Object> attributes;
     
-    private Request() {
-        this.headers = new HashMap<>();
-        this.queryParams = new HashMap<>();
-        this.pathParams = new HashMap<>();
-        this.attributes = new HashMap<>();
+    private static final byte[] CONTINUE_RESPONSE =
+            "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    
+    Request() {
     }
     
+    /**
+     * Parses the next request from the stream without reading past its end.
+     *
+     * @return the parsed request, or null if the peer closed the connection
+     *         before sending another request
+     * @deprecated reads a byte at a time; engines feed a per-connection
+     *             {@link RequestParser} instead
+     */
+    @Deprecated
     public static Request parse(InputStream input, Socket socket) throws IOException {
-        Request request = new Request();
-        request.socket = socket;
-        
-        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
-        
-        // Parse request line
-        String requestLine = reader.readLine();
-        if (requestLine == null || requestLine.isEmpty()) {
-            throw new IOException("Empty request");
-        }
-        
-        String[] parts = requestLine.split(" ");
-        if (parts.length < 3) {
-            throw new IOException("Invalid request line: " + requestLine);
-        }
-        
-        request.method = parts[0];
-        String fullPath = parts[1];
-        request.protocol = parts[2];
-        
-        // Parse path and query string
-        int queryIndex = fullPath.indexOf('?');
-        if (queryIndex != -1) {
-            request.path = fullPath.substring(0, queryIndex);
-            request.queryString = fullPath.substring(queryIndex + 1);
-            request.parseQueryString(request.queryString);
-        } else {
-            request.path = fullPath;
-        }
-        
-        // Parse headers
-        String line;
-        while ((line = reader.readLine()) != null && !line.isEmpty()) {
-            int colonIndex = line.indexOf(':');
-            if (colonIndex != -1) {
-                String headerName = line.substring(0, colonIndex).trim();
-                String headerValue = line.substring(colonIndex + 1).trim();
-                request.headers.put(headerName.toLowerCase(), headerValue);
-            }
-        }
-        
-        // Parse body if present
-        String contentLengthStr = request.headers.get("content-length");
-        if (contentLengthStr != null) {
-            try {
-                int contentLength = Integer.parseInt(contentLengthStr);
-                if (contentLength > 0) {
-                    char[] bodyChars = new char[contentLength];
-                    int totalRead = 0;
-                    while (totalRead < contentLength) {
-                        int read = reader.read(bodyChars, totalRead, contentLength - totalRead);
-                        if (read == -1) break;
-                        totalRead += read;
-                    }
-                    request.bodyString = new String(bodyChars, 0, totalRead);
-                    request.body = request.bodyString.getBytes(StandardCharsets.UTF_8);
-                }
-            } catch (NumberFormatException e) {
-                // Invalid content length, skip body
-            }
-        }
-        
-        return request;
+        return new RequestParser(MWUConfig.builder().build()).parse(input, socket);
     }
     
-    private void parseQueryString(String query) {
-        if (query == null || query.isEmpty()) return;
+    // ==================== Parser Hooks ====================
+    
+    void setConnection(Socket socket) {
+        this.socket = socket;
+    }
+    
+    /**
+     * @param head          request head bytes, owned by this request from now on
+     * @param headerOffsets name start, name end, value start, value end per header
+     */
+    void setHead(String method, String protocol, byte[] head, int targetStart, int targetEnd,
+                 int[] headerOffsets, int headerCount) {
+        this.method = method;
+        this.protocol = protocol;
+        this.head = head;
+        this.targetStart = targetStart;
+        this.targetEnd = targetEnd;
+        this.headerOffsets = headerOffsets;
+        this.headerCount = headerCount;
         
-        String[] pairs = query.split("&");
-        for (String pair : pairs) {
-            int eqIndex = pair.indexOf('=');
-            if (eqIndex != -1) {
-                try {
-                    String key = URLDecoder.decode(pair.substring(0, eqIndex), "UTF-8");
-                    String value = URLDecoder.decode(pair.substring(eqIndex + 1), "UTF-8");
-                    queryParams.put(key, value);
-                } catch (UnsupportedEncodingException e) {
-                    // Skip invalid pairs
-                }
-            }
-        }
+        int queryIndex = indexOf(head, targetStart, targetEnd, (byte) '?');
+        this.pathEnd = queryIndex == -1 ? targetEnd : queryIndex;
+    }
+    
+    /**
+     * @param bodyStream    framed body stream, or null if the request has no body
+     * @param interimOutput connection output for the 100 Continue interim response
+     */
+    void setBody(InputStream bodyStream, OutputStream interimOutput, boolean expectContinue) {
+        this.bodyStream = bodyStream;
+        this.interimOutput = interimOutput;
+        this.expectContinue = expectContinue;
     }
     
     // ==================== Getters ====================
@@ -122,10 +119,16 @@ public class Request {
     }
     
     public String getPath() {
+        if (path == null) {
+            path = new String(head, targetStart, pathEnd - targetStart, StandardCharsets.UTF_8);
+        }
         return path;
     }
     
     public String getQueryString() {
+        if (queryString == null && pathEnd < targetEnd) {
+            queryString = new String(head, pathEnd + 1, targetEnd - pathEnd - 1, StandardCharsets.UTF_8);
+        }
         return queryString;
     }
     
@@ -133,43 +136,324 @@ public class Request {
         return protocol;
     }
     
+    // ==================== Headers ====================
+    
+    /**
+     * Returns the first value of the named header (case-insensitive).
+     */
     public String getHeader(String name) {
-        return headers.get(name.toLowerCase());
+        for (int i = 0; i < headerCount; i++) {
+            if (headerNameMatches(i, name)) {
+                return headerValue(i);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns every value of the named header, in the order received.
+     */
+    public List<String> getHeaderValues(String name) {
+        List<String> values = new ArrayList<>(1);
+        for (int i = 0; i < headerCount; i++) {
+            if (headerNameMatches(i, name)) {
+                values.add(headerValue(i));
+            }
+        }
+        return Collections.unmodifiableList(values);
     }
     
+    /**
+     * All headers keyed by lower-case name, with the first value of each.
+     */
     public Map<String, String> getHeaders() {
-        return Collections.unmodifiableMap(headers);
+        if (headers == null) {
+            Map<String, String> all = new LinkedHashMap<>();
+            for (int i = 0; i < headerCount; i++) {
+                int index = i * 4;
+                String name = new String(head, headerOffsets[index],
+                        headerOffsets[index + 1] - headerOffsets[index], StandardCharsets.US_ASCII);
+                all.putIfAbsent(name.toLowerCase(Locale.ROOT), headerValue(i));
+            }
+            headers = Collections.unmodifiableMap(all);
+        }
+        return headers;
+    }
+    
+    private boolean headerNameMatches(int header, String name) {
+        int start = headerOffsets[header * 4];
+        int end = headerOffsets[header * 4 + 1];
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (toLowerAscii(head[i]) != toLowerAscii(name.charAt(i - start))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private String headerValue(int header) {
+        if (headerValues == null) {
+            headerValues = new String[headerCount];
+        }
+        String value = headerValues[header];
+        if (value == null) {
+            int start = headerOffsets[header * 4 + 2];
+            int end = headerOffsets[header * 4 + 3];
+            value = new String(head, start, end - start, StandardCharsets.UTF_8);
+            headerValues[header] = value;
+        }
+        return value;
     }
     
+    // ==================== Query Parameters ====================
+    
+    /**
+     * Returns the first value of the named query parameter.
+     */
     public String getQueryParam(String name) {
-        return queryParams.get(name);
+        List<String> values = getQueryParamValues(name);
+        return values.isEmpty() ? null : values.get(0);
     }
     
     public String getQueryParam(String name, String defaultValue) {
-        return queryParams.getOrDefault(name, defaultValue);
+        String value = getQueryParam(name);
+        return value != null ? value : defaultValue;
+    }
+    
+    /**
+     * Returns every value of the named query parameter ({@code ?tag=a&tag=b}).
+     */
+    public List<String> getQueryParamValues(String name) {
+        if (pathEnd >= targetEnd) {
+            return Collections.emptyList();
+        }
+        if (queryCache == null) {
+            queryCache = new HashMap<>();
+        }
+        List<String> cached = queryCache.get(name);
+        if (cached == null) {
+            cached = Collections.unmodifiableList(findQueryValues(name));
+            queryCache.put(name, cached);
+        }
+        return cached;
     }
     
+    /**
+     * All query parameters with the first value of each.
+     */
     public Map<String, String> getQueryParams() {
-        return Collections.unmodifiableMap(queryParams);
+        if (queryParams == null) {
+            Map<String, String> all = new LinkedHashMap<>();
+            int start = pathEnd + 1;
+            while (start < targetEnd) {
+                int end = pairEnd(start);
+                int eq = indexOf(head, start, end, (byte) '=');
+                int keyEnd = eq == -1 ? end : eq;
+                if (keyEnd > start) {
+                    all.putIfAbsent(urlDecode(start, keyEnd), eq == -1 ? "" : urlDecode(eq + 1, end));
+                }
+                start = end + 1;
+            }
+            queryParams = Collections.unmodifiableMap(all);
+        }
+        return queryParams;
+    }
+    
+    private List<String> findQueryValues(String name) {
+        List<String> values = new ArrayList<>(1);
+        int start = pathEnd + 1;
+        while (start < targetEnd) {
+            int end = pairEnd(start);
+            int eq = indexOf(head, start, end, (byte) '=');
+            int keyEnd = eq == -1 ? end : eq;
+            if (queryKeyMatches(start, keyEnd, name)) {
+                values.add(eq == -1 ? "" : urlDecode(eq + 1, end));
+            }
+            start = end + 1;
+        }
+        return values;
+    }
+    
+    private int pairEnd(int start) {
+        int end = indexOf(head, start, targetEnd, (byte) '&');
+        return end == -1 ? targetEnd : end;
     }
     
+    private boolean queryKeyMatches(int start, int end, String name) {
+        // Plain ASCII keys are compared in place; only escaped keys are decoded
+        boolean plain = true;
+        for (int i = start; i < end && plain; i++) {
+            byte b = head[i];
+            plain = b != '%' && b != '+' && b >= 0;
+        }
+        if (!plain) {
+            return urlDecode(start, end).equals(name);
+        }
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (head[i] != name.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private String urlDecode(int start, int end) {
+        String raw = new String(head, start, end - start, StandardCharsets.UTF_8);
+        try {
+            return URLDecoder.decode(raw, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return raw; // Malformed escape, keep as sent
+        }
+    }
+    
+    // ==================== Cookies ====================
+    
+    public String getCookie(String name) {
+        return getCookies().get(name);
+    }
+    
+    public Map<String, String> getCookies() {
+        if (cookies == null) {
+            Map<String, String> all = new LinkedHashMap<>();
+            for (String header : getHeaderValues("cookie")) {
+                for (String pair : header.split(";")) {
+                    int eq = pair.indexOf('=');
+                    if (eq <= 0) continue;
+                    String value = pair.substring(eq + 1).trim();
+                    if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                        value = value.substring(1, value.length() - 1);
+                    }
+                    all.putIfAbsent(pair.substring(0, eq).trim(), value);
+                }
+            }
+            cookies = Collections.unmodifiableMap(all);
+        }
+        return cookies;
+    }
+    
+    // ==================== Path Parameters ====================
+    
     public String getPathParam(String name) {
-        return pathParams.get(name);
+        return routeMatch != null ? routeMatch.getParam(name) : pathParams.get(name);
     }
     
     public Map<String, String> getPathParams() {
-        return Collections.unmodifiableMap(pathParams);
+        return routeMatch != null ? routeMatch.getParams() : Collections.unmodifiableMap(pathParams);
     }
     
     public void setParams(Map<String, String> params) {
         this.pathParams = params;
+        this.routeMatch = null;
     }
     
+    /**
+     * Path parameters from the route this request matched
+     */
+    public void setRouteMatch(RouteMatch match) {
+        this.routeMatch = match;
+    }
+    
+    /**
+     * The route this request matched, or null before routing or if none did
+     */
+    public RouteMatch getRouteMatch() {
+        return routeMatch;
+    }
+    
+    void setUploadLimits(int multipartMemoryThreshold, Path uploadDirectory) {
+        this.multipartMemoryThreshold = multipartMemoryThreshold;
+        this.uploadDirectory = uploadDirectory;
+    }
+    
+    // ==================== Body ====================
+    
+    /**
+     * Reads the whole body into memory on first call. Returns null if the
+     * request has no body. Use {@link #getBodyStream()} for large uploads.
+     *
+     * @throws UncheckedIOException if reading fails or the body exceeds
+     *         the configured maximum request size
+     */
     public byte[] getBody() {
+        if (body == null && bodyStream != null) {
+            if (streamRequested) {
+                throw new IllegalStateException("Body is being read as a stream");
+            }
+            try {
+                body = getBodyStream().readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         return body;
     }
     
+    /**
+     * Streams the body straight from the connection, decoding chunked
+     * transfer encoding and enforcing the maximum request size as it goes.
+     * If the client sent "Expect: 100-continue", the interim response is
+     * sent now.
+     */
+    public InputStream getBodyStream() throws IOException {
+        if (body != null) {
+            return new ByteArrayInputStream(body);
+        }
+        if (bodyStream == null) {
+            return InputStream.nullInputStream();
+        }
+        streamRequested = true;
+        if (expectContinue && !continueSent) {
+            continueSent = true;
+            interimOutput.write(CONTINUE_RESPONSE);
+            interimOutput.flush();
+        }
+        return bodyStream;
+    }
+    
+    public ReadableByteChannel getBodyChannel() throws IOException {
+        return Channels.newChannel(getBodyStream());
+    }
+    
+    /**
+     * Skips whatever part of the body the handler did not read, so the next
+     * request on the connection can be parsed. Used by the server engines.
+     *
+     * @return false if the connection cannot be reused (too much left to
+     *         skip, or the client is still waiting for 100 Continue)
+     */
+    public boolean discardBody(long maxBytes) {
+        if (bodyStream == null || body != null) {
+            return true;
+        }
+        if (expectContinue && !continueSent) {
+            return false;
+        }
+        try {
+            byte[] scratch = new byte[4096];
+            long skipped = 0;
+            int read;
+            while ((read = bodyStream.read(scratch)) != -1) {
+                skipped += read;
+                if (skipped > maxBytes) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
     public String getBodyAsString() {
+        if (bodyString == null && getBody() != null) {
+            bodyString = new String(body, StandardCharsets.UTF_8);
+        }
         return bodyString;
     }
     
@@ -199,22 +483,62 @@ public class Request {
     
     public boolean isFormData() {
         String contentType = getContentType();
-        return contentType != null && contentType.contains("application/x-www-form-urlencoded");
+        return contentType != null && (contentType.contains("application/x-www-form-urlencoded")
+                || isMultipart());
+    }
+    
+    public boolean isMultipart() {
+        String contentType = getContentType();
+        return contentType != null && contentType.regionMatches(true, 0, "multipart/form-data", 0, 19);
+    }
+    
+    // ==================== Multipart ====================
+    
+    /**
+     * Iterates over the parts of a multipart/form-data body as they are
+     * read from the connection. Small parts are kept in memory, larger ones
+     * are spilled to temporary files that are deleted after the response
+     * is sent; use {@link Part#transferTo(Path)} to keep one.
+     *
+     * @throws HttpParseException if the request is not multipart or has no boundary
+     */
+    public Iterator<Part> getParts() throws IOException {
+        if (multipart == null) {
+            String boundary = isMultipart() ? MultipartParser.boundaryOf(getContentType()) : null;
+            if (boundary == null) {
+                throw new HttpParseException(400, "Not a multipart request");
+            }
+            multipart = new MultipartParser(getBodyStream(), boundary, multipartMemoryThreshold, uploadDirectory);
+        }
+        return multipart;
+    }
+    
+    /**
+     * Deletes temporary files created for uploads. Called by the server
+     * once the response has been sent.
+     */
+    public void releaseUploads() {
+        if (multipart != null) {
+            multipart.close();
+        }
     }
     
     // ==================== Request Context ====================
     
     public void setAttribute(String key, Object value) {
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
         attributes.put(key, value);
     }
     
     public Object getAttribute(String key) {
-        return attributes.get(key);
+        return attributes != null ? attributes.get(key) : null;
     }
     
     @SuppressWarnings("unchecked")
     public <T> T getAttribute(String key, Class<T> type) {
-        Object value = attributes.get(key);
+        Object value = getAttribute(key);
         if (value != null && type.isInstance(value)) {
             return (T) value;
         }
@@ -228,17 +552,60 @@ public class Request {
         return accept != null && accept.contains(contentType);
     }
     
+    /**
+     * Whether Accept-Encoding allows a content coding such as "gzip"
+     */
+    public boolean acceptsEncoding(String coding) {
+        return Compression.accepts(getHeader("accept-encoding"), coding);
+    }
+    
     public boolean isSecure() {
         String proto = getHeader("x-forwarded-proto");
         return proto != null && proto.equals("https");
     }
     
+    /**
+     * Whether the client wants the connection kept open after this request.
+     * HTTP/1.1 is persistent unless the client sends "Connection: close";
+     * HTTP/1.0 is only persistent when it asks for "Connection: keep-alive".
+     */
+    public boolean isKeepAlive() {
+        String connection = getHeader("connection");
+        if ("HTTP/1.0".equalsIgnoreCase(protocol)) {
+            return hasToken(connection, "keep-alive");
+        }
+        return !hasToken(connection, "close");
+    }
+    
+    private static boolean hasToken(String headerValue, String token) {
+        if (headerValue == null) return false;
+        for (String part : headerValue.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     public String getUserAgent() {
         return getHeader("user-agent");
     }
     
+    private static int indexOf(byte[] data, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static int toLowerAscii(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + 32 : c;
+    }
+    
     @Override
     public String toString() {
-        return String.format("%s %s %s", method, path, protocol);
+        return String.format("%s %s %s", method, getPath(), protocol);
     }
 }
\ No newline at end of file
@@ -0,0 +1,415 @@
+package com.mwu.routing;
+
+import com.mwu.config.MWUConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Incremental, byte-level HTTP/1.x request head parser.
+ *
+ * Bytes are fed in as they arrive and copied once into a buffer that is
+ * reused for every request on the connection. Only the request head is
+ * consumed, so whatever follows it (the body or a pipelined request) stays
+ * with the caller. The request line and headers are recorded as offsets
+ * into the buffer and handed to the Request, which decodes them lazily.
+ *
+ * Limits are enforced while parsing so oversized requests are rejected
+ * with 414/431/413 before they are buffered. Bodies framed by
+ * Content-Length or chunked transfer encoding are streamed, never buffered
+ * here.
+ */
+public class RequestParser {
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    
+    private static final String[] METHOD_NAMES = { "GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS" };
+    private static final byte[][] METHODS = tokens(METHOD_NAMES);
+    private static final byte[] HTTP_1_1 = "HTTP/1.1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HTTP_1_0 = "HTTP/1.0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HTTP_PREFIX = "HTTP/".getBytes(StandardCharsets.US_ASCII);
+    
+    private static final int DEFAULT_MULTIPART_MEMORY_THRESHOLD = 64 * 1024;
+    
+    private enum State { START, REQUEST_LINE, HEADERS, COMPLETE }
+    
+    private final int maxHeaderSize;
+    private final int maxHeaderCount;
+    private final long maxRequestSize;
+    private final int multipartMemoryThreshold;
+    private final Path uploadDirectory;
+    
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int length = 0;
+    private int lineStart = 0;
+    private State state = State.START;
+    
+    // Request line offsets
+    private int methodEnd;
+    private int targetStart;
+    private int targetEnd;
+    private int versionStart;
+    private int versionEnd;
+    
+    // Four entries per header: name start, name end, value start, value end
+    private int[] headerOffsets = new int[16 * 4];
+    private int headerCount = 0;
+    
+    public RequestParser(MWUConfig config) {
+        this.maxHeaderSize = config.getMaxHeaderSize();
+        this.maxHeaderCount = config.getMaxHeaderCount();
+        this.maxRequestSize = config.getMaxRequestSize();
+        this.multipartMemoryThreshold = config.getMultipartMemoryThreshold();
+        this.uploadDirectory = config.getUploadDirectory() != null ? Paths.get(config.getUploadDirectory()) : null;
+    }
+    
+    public RequestParser(int maxHeaderSize, int maxHeaderCount, long maxRequestSize) {
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxHeaderCount = maxHeaderCount;
+        this.maxRequestSize = maxRequestSize;
+        this.multipartMemoryThreshold = DEFAULT_MULTIPART_MEMORY_THRESHOLD;
+        this.uploadDirectory = null;
+    }
+    
+    // ==================== Feeding ====================
+    
+    /**
+     * Consumes bytes up to and including the blank line that ends the request
+     * head. Bytes after it are left untouched.
+     *
+     * @return the number of bytes consumed
+     */
+    public int feed(byte[] data, int offset, int count) throws HttpParseException {
+        int pos = offset;
+        int end = offset + count;
+        
+        while (pos < end && state != State.COMPLETE) {
+            if (state == State.START) {
+                // Ignore stray CRLFs between requests
+                byte b = data[pos];
+                if (b == '\r' || b == '\n') {
+                    pos++;
+                    continue;
+                }
+                state = State.REQUEST_LINE;
+            }
+            
+            int newline = indexOf(data, pos, end, (byte) '\n');
+            int chunkEnd = newline == -1 ? end : newline + 1;
+            append(data, pos, chunkEnd - pos);
+            pos = chunkEnd;
+            
+            if (newline != -1) {
+                endOfLine();
+            }
+        }
+        
+        return pos - offset;
+    }
+    
+    public boolean isComplete() {
+        return state == State.COMPLETE;
+    }
+    
+    /**
+     * True once anything other than blank lines has been fed for the
+     * current request.
+     */
+    public boolean hasStarted() {
+        return state != State.START;
+    }
+    
+    public void reset() {
+        state = State.START;
+        length = 0;
+        lineStart = 0;
+        headerCount = 0;
+    }
+    
+    private void append(byte[] data, int offset, int count) throws HttpParseException {
+        if (length + count > maxHeaderSize) {
+            if (state == State.REQUEST_LINE) {
+                throw new HttpParseException(414, "URI Too Long");
+            }
+            throw new HttpParseException(431, "Request Header Fields Too Large");
+        }
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(maxHeaderSize, Math.max(buffer.length * 2, length + count)));
+        }
+        System.arraycopy(data, offset, buffer, length, count);
+        length += count;
+    }
+    
+    private void endOfLine() throws HttpParseException {
+        int start = lineStart;
+        int end = length - 1; // Drop LF
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = length;
+        
+        if (state == State.REQUEST_LINE) {
+            parseRequestLine(start, end);
+            state = State.HEADERS;
+        } else if (end == start) {
+            state = State.COMPLETE;
+        } else {
+            parseHeaderLine(start, end);
+        }
+    }
+    
+    private void parseRequestLine(int start, int end) throws HttpParseException {
+        methodEnd = indexOf(buffer, start, end, (byte) ' ');
+        if (methodEnd <= start) {
+            throw new HttpParseException(400, "Invalid request line");
+        }
+        for (int i = start; i < methodEnd; i++) {
+            if (!isTokenChar(buffer[i])) {
+                throw new HttpParseException(400, "Invalid request method");
+            }
+        }
+        
+        targetStart = methodEnd + 1;
+        targetEnd = indexOf(buffer, targetStart, end, (byte) ' ');
+        if (targetEnd <= targetStart) {
+            throw new HttpParseException(400, "Invalid request line");
+        }
+        
+        versionStart = targetEnd + 1;
+        versionEnd = end;
+        if (!startsWith(buffer, versionStart, versionEnd, HTTP_PREFIX)) {
+            throw new HttpParseException(400, "Invalid protocol version");
+        }
+    }
+    
+    private void parseHeaderLine(int start, int end) throws HttpParseException {
+        if (buffer[start] == ' ' || buffer[start] == '\t') {
+            throw new HttpParseException(400, "Obsolete header line folding");
+        }
+        
+        int colon = indexOf(buffer, start, end, (byte) ':');
+        if (colon <= start || buffer[colon - 1] == ' ' || buffer[colon - 1] == '\t') {
+            throw new HttpParseException(400, "Invalid header line");
+        }
+        if (headerCount >= maxHeaderCount) {
+            throw new HttpParseException(431, "Too many headers");
+        }
+        
+        int valueStart = colon + 1;
+        int valueEnd = end;
+        while (valueStart < valueEnd && isWhitespace(buffer[valueStart])) {
+            valueStart++;
+        }
+        while (valueEnd > valueStart && isWhitespace(buffer[valueEnd - 1])) {
+            valueEnd--;
+        }
+        
+        int index = headerCount * 4;
+        if (index + 4 > headerOffsets.length) {
+            headerOffsets = Arrays.copyOf(headerOffsets, headerOffsets.length * 2);
+        }
+        headerOffsets[index] = start;
+        headerOffsets[index + 1] = colon;
+        headerOffsets[index + 2] = valueStart;
+        headerOffsets[index + 3] = valueEnd;
+        headerCount++;
+    }
+    
+    // ==================== Building ====================
+    
+    /**
+     * Builds the Request from a complete head and resets the parser for the
+     * next request. The body is not read here; the request streams it from
+     * {@code bodySource} on demand.
+     *
+     * @param interimOutput where to send 100 Continue, or null if not supported
+     */
+    public Request build(InputStream bodySource, OutputStream interimOutput, Socket socket) throws IOException {
+        if (!isComplete()) {
+            throw new IllegalStateException("Request head is not complete");
+        }
+        
+        try {
+            long contentLength = -1;
+            boolean chunked = false;
+            boolean expectContinue = false;
+            for (int i = 0; i < headerCount; i++) {
+                int index = i * 4;
+                int nameStart = headerOffsets[index];
+                int nameEnd = headerOffsets[index + 1];
+                int valueStart = headerOffsets[index + 2];
+                int valueEnd = headerOffsets[index + 3];
+                
+                if (equalsIgnoreCase(buffer, nameStart, nameEnd, "content-length")) {
+                    long parsed = parseContentLength(valueStart, valueEnd);
+                    if (contentLength != -1 && contentLength != parsed) {
+                        throw new HttpParseException(400, "Conflicting Content-Length headers");
+                    }
+                    contentLength = parsed;
+                } else if (equalsIgnoreCase(buffer, nameStart, nameEnd, "transfer-encoding")) {
+                    if (!equalsIgnoreCase(buffer, valueStart, valueEnd, "chunked")) {
+                        throw new HttpParseException(501, "Unsupported Transfer-Encoding");
+                    }
+                    chunked = true;
+                } else if (equalsIgnoreCase(buffer, nameStart, nameEnd, "expect")) {
+                    if (!equalsIgnoreCase(buffer, valueStart, valueEnd, "100-continue")) {
+                        throw new HttpParseException(417, "Expectation Failed");
+                    }
+                    expectContinue = true;
+                }
+            }
+            
+            if (chunked && contentLength != -1) {
+                throw new HttpParseException(400, "Both Content-Length and Transfer-Encoding present");
+            }
+            if (contentLength > maxRequestSize) {
+                throw new HttpParseException(413, "Payload Too Large");
+            }
+            
+            // The request takes its own copy of the head; the buffer is reused
+            String protocol = protocol();
+            Request request = new Request();
+            request.setConnection(socket);
+            request.setHead(method(), protocol, Arrays.copyOf(buffer, length), targetStart, targetEnd,
+                    Arrays.copyOf(headerOffsets, headerCount * 4), headerCount);
+            
+            InputStream body = null;
+            if (chunked) {
+                body = new ChunkedInputStream(bodySource, maxRequestSize);
+            } else if (contentLength > 0) {
+                body = new ContentLengthInputStream(bodySource, contentLength);
+            }
+            request.setBody(body, interimOutput,
+                    body != null && expectContinue && interimOutput != null && "HTTP/1.1".equals(protocol));
+            request.setUploadLimits(multipartMemoryThreshold, uploadDirectory);
+            
+            return request;
+        } finally {
+            reset();
+        }
+    }
+    
+    /**
+     * Parses one request from a stream that may be shared with whatever
+     * follows it, reading a byte at a time so nothing is over-read.
+     * Prefer feeding buffered bytes directly where the caller owns the buffer.
+     *
+     * @return the request, or null if the stream ended before a request started
+     */
+    public Request parse(InputStream input, Socket socket) throws IOException {
+        byte[] single = new byte[1];
+        while (!isComplete()) {
+            int b = input.read();
+            if (b == -1) {
+                if (!hasStarted()) {
+                    return null;
+                }
+                reset();
+                throw new HttpParseException(400, "Incomplete request head");
+            }
+            single[0] = (byte) b;
+            feed(single, 0, 1);
+        }
+        return build(input, null, socket);
+    }
+    
+    private String method() {
+        // Common methods map to constants without allocating
+        for (int i = 0; i < METHODS.length; i++) {
+            if (methodEnd == METHODS[i].length && startsWith(buffer, 0, methodEnd, METHODS[i])) {
+                return METHOD_NAMES[i];
+            }
+        }
+        return new String(buffer, 0, methodEnd, StandardCharsets.US_ASCII);
+    }
+    
+    private String protocol() {
+        int versionLength = versionEnd - versionStart;
+        if (versionLength == HTTP_1_1.length && startsWith(buffer, versionStart, versionEnd, HTTP_1_1)) {
+            return "HTTP/1.1";
+        }
+        if (versionLength == HTTP_1_0.length && startsWith(buffer, versionStart, versionEnd, HTTP_1_0)) {
+            return "HTTP/1.0";
+        }
+        return new String(buffer, versionStart, versionLength, StandardCharsets.US_ASCII);
+    }
+    
+    private long parseContentLength(int start, int end) throws HttpParseException {
+        if (start == end) {
+            throw new HttpParseException(400, "Invalid Content-Length");
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9') {
+                throw new HttpParseException(400, "Invalid Content-Length");
+            }
+            value = value * 10 + (b - '0');
+            if (value > maxRequestSize) {
+                throw new HttpParseException(413, "Payload Too Large");
+            }
+        }
+        return value;
+    }
+    
+    // ==================== Byte Helpers ====================
+    
+    private static int indexOf(byte[] data, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static boolean startsWith(byte[] data, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    static boolean equalsIgnoreCase(byte[] data, int from, int to, String lowerCaseName) {
+        if (to - from != lowerCaseName.length()) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            int b = data[i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 32;
+            }
+            if (b != lowerCaseName.charAt(i - from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+    
+    private static boolean isTokenChar(byte b) {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9')
+                || "!#$%&'*+-.^_`|~".indexOf(b) >= 0;
+    }
+    
+    private static byte[][] tokens(String... values) {
+        byte[][] result = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return result;
+    }
+}
@@ -1,19 +1,40 @@
 package com.mwu.routing;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * HTTP Response with fluent API
  */
 public class Response {
-    private final OutputStream output;
+    private final ResponseWriter writer;
+    private final boolean chunkedAllowed;
     private int statusCode = 200;
     private String statusMessage = "OK";
+    private byte[] statusLine; // pre-encoded, null for custom messages
     private Map<String, String> headers;
+    private HeaderBlock[] headerBlocks = { SERVER_HEADERS, null };
+    private int headerBlockCount = 1;
     private boolean sent = false;
     private long bytesSent = 0;
+    private StreamingBody streamingBody;
+    private boolean aborted = false;
+    private boolean headOnly = false; // answering HEAD: headers, no body
+    private Request conditionalRequest; // set when body ETags are enabled
+    private String compressionCoding;
+    private int compressionThreshold = -1; // -1 = compression off
+    private int compressionLevel;
     
     private static final Map<Integer, String> STATUS_MESSAGES = new HashMap<>();
     
@@ -21,6 +42,7 @@ public class Response {
         STATUS_MESSAGES.put(200, "OK");
         STATUS_MESSAGES.put(201, "Created");
         STATUS_MESSAGES.put(204, "No Content");
+        STATUS_MESSAGES.put(206, "Partial Content");
         STATUS_MESSAGES.put(301, "Moved Permanently");
         STATUS_MESSAGES.put(302, "Found");
         STATUS_MESSAGES.put(304, "Not Modified");
@@ -29,19 +51,77 @@ public class Response {
         STATUS_MESSAGES.put(403, "Forbidden");
         STATUS_MESSAGES.put(404, "Not Found");
         STATUS_MESSAGES.put(405, "Method Not Allowed");
+        STATUS_MESSAGES.put(413, "Payload Too Large");
+        STATUS_MESSAGES.put(414, "URI Too Long");
+        STATUS_MESSAGES.put(416, "Range Not Satisfiable");
+        STATUS_MESSAGES.put(417, "Expectation Failed");
         STATUS_MESSAGES.put(429, "Too Many Requests");
+        STATUS_MESSAGES.put(431, "Request Header Fields Too Large");
         STATUS_MESSAGES.put(500, "Internal Server Error");
+        STATUS_MESSAGES.put(501, "Not Implemented");
         STATUS_MESSAGES.put(502, "Bad Gateway");
         STATUS_MESSAGES.put(503, "Service Unavailable");
     }
     
+    // Pre-encoded "HTTP/1.1 200 OK\r\n" lines and "Name: " prefixes
+    private static final Map<Integer, byte[]> STATUS_LINES = new HashMap<>();
+    private static final Map<String, byte[]> HEADER_NAMES = new HashMap<>();
+    
+    static {
+        for (Map.Entry<Integer, String> entry : STATUS_MESSAGES.entrySet()) {
+            STATUS_LINES.put(entry.getKey(), encodeStatusLine(entry.getKey(), entry.getValue()));
+        }
+        for (String name : new String[] {
+                "Server", "Date", "Connection", "Keep-Alive", "Content-Type", "Content-Length",
+                "Content-Disposition", "Content-Encoding", "Transfer-Encoding", "Location",
+                "Cache-Control", "ETag", "Last-Modified", "Vary", "Allow", "Retry-After",
+                "Accept-Ranges", "Content-Range",
+                "X-Content-Type-Options", "X-Frame-Options", "X-XSS-Protection",
+                "Strict-Transport-Security", "Content-Security-Policy", "Referrer-Policy",
+                "Access-Control-Allow-Origin", "Access-Control-Allow-Methods",
+                "Access-Control-Allow-Headers", "Access-Control-Allow-Credentials",
+                "Access-Control-Max-Age", "X-RateLimit-Limit", "X-RateLimit-Remaining",
+                "X-RateLimit-Reset" }) {
+            HEADER_NAMES.put(name, (name + ": ").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+    
+    private static final ByteBuffer EMPTY_BODY = ByteBuffer.allocate(0);
+    
+    /** Sent on every response */
+    private static final HeaderBlock SERVER_HEADERS = HeaderBlock.of("Server", "MWU/2.0");
+    
+    private static byte[] encodeStatusLine(int code, String message) {
+        return ("HTTP/1.1 " + code + " " + message + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+    
     public Response(OutputStream output) {
-        this.output = output;
+        this(new ResponseWriter(output));
+    }
+    
+    public Response(ResponseWriter writer) {
+        this(writer, "HTTP/1.1");
+    }
+    
+    /**
+     * @param protocol protocol of the request being answered; HTTP/1.0
+     *                 clients get streamed bodies without chunked encoding
+     */
+    public Response(ResponseWriter writer, String protocol) {
+        this.writer = writer;
+        this.chunkedAllowed = !"HTTP/1.0".equalsIgnoreCase(protocol);
+        this.statusLine = STATUS_LINES.get(200);
         this.headers = new LinkedHashMap<>();
-        
-        // Default headers
-        header("Server", "MWU/2.0");
-        header("Date", new Date().toString());
+    }
+    
+    /**
+     * Marks this as the answer to a HEAD request: every send renders the
+     * status and headers, Content-Length included, exactly as for GET but
+     * writes no body, so the connection stays in step for the next request
+     */
+    public Response headOnly() {
+        this.headOnly = true;
+        return this;
     }
     
     // ==================== Status ====================
@@ -49,12 +129,14 @@ public class Response {
     public Response status(int code) {
         this.statusCode = code;
         this.statusMessage = STATUS_MESSAGES.getOrDefault(code, "Unknown");
+        this.statusLine = STATUS_LINES.get(code);
         return this;
     }
     
     public Response status(int code, String message) {
         this.statusCode = code;
         this.statusMessage = message;
+        this.statusLine = null;
         return this;
     }
     
@@ -70,6 +152,41 @@ public class Response {
         return this;
     }
     
+    /**
+     * Adds a block of pre-encoded headers. Headers set individually with
+     * {@link #header(String, String)} override the block's values.
+     */
+    public Response headers(HeaderBlock block) {
+        if (headerBlockCount == headerBlocks.length) {
+            headerBlocks = Arrays.copyOf(headerBlocks, headerBlocks.length * 2);
+        }
+        headerBlocks[headerBlockCount++] = block;
+        return this;
+    }
+    
+    public String getHeader(String name) {
+        String value = findHeader(name);
+        if (value != null) {
+            return value;
+        }
+        for (int i = headerBlockCount - 1; i >= 0; i--) {
+            value = headerBlocks[i].get(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return "Date".equalsIgnoreCase(name) ? HttpDate.now() : null;
+    }
+    
+    private String findHeader(String name) {
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+    
     public Response contentType(String type) {
         return header("Content-Type", type);
     }
@@ -80,9 +197,14 @@ public class Response {
         send(new byte[0]);
     }
     
+    /**
+     * Sends a UTF-8 body, as HTML unless a Content-Type has been set
+     */
     public void send(String content) throws IOException {
         byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
-        header("Content-Type", "text/html; charset=UTF-8");
+        if (getHeader("Content-Type") == null) {
+            header("Content-Type", "text/html; charset=UTF-8");
+        }
         send(bytes);
     }
     
@@ -91,29 +213,525 @@ public class Response {
             throw new IllegalStateException("Response already sent");
         }
         
-        header("Content-Length", String.valueOf(content.length));
+        String coding = contentCoding(content.length);
+        if (conditionalRequest != null && statusCode == 200 && getHeader("ETag") == null) {
+            header("ETag", bodyETag(content, coding));
+            if (checkNotModified(conditionalRequest)) {
+                return;
+            }
+        }
+        if (coding != null) {
+            content = Compression.encode(content, coding, compressionLevel);
+            header("Content-Encoding", coding);
+        }
         
-        // Write status line
-        String statusLine = String.format("HTTP/1.1 %d %s\r\n", statusCode, statusMessage);
-        output.write(statusLine.getBytes(StandardCharsets.UTF_8));
+        contentLength(content.length);
+        renderHead();
         
-        // Write headers
+        // Head and body in one write
+        int length = headOnly ? 0 : content.length;
+        writer.send(content, 0, length);
+        sent = true;
+        bytesSent = length;
+    }
+    
+    /**
+     * Sets Content-Length unless a header block already carries this value
+     */
+    private void contentLength(long length) {
+        String value = String.valueOf(length);
+        if (findHeader("Content-Length") == null) {
+            for (int i = headerBlockCount - 1; i >= 0; i--) {
+                String blockValue = headerBlocks[i].get("Content-Length");
+                if (blockValue != null) {
+                    if (blockValue.equals(value)) {
+                        return;
+                    }
+                    break;
+                }
+            }
+        }
+        header("Content-Length", value);
+    }
+    
+    private void renderHead() {
+        writer.beginHead();
+        writer.appendBytes(statusLine != null ? statusLine : encodeStatusLine(statusCode, statusMessage));
+        if (findHeader("Date") == null) {
+            writer.appendBytes(HttpDate.headerLine());
+        }
+        for (int i = 0; i < headerBlockCount; i++) {
+            appendBlock(headerBlocks[i], i);
+        }
         for (Map.Entry<String, String> entry : headers.entrySet()) {
-            String headerLine = String.format("%s: %s\r\n", entry.getKey(), entry.getValue());
-            output.write(headerLine.getBytes(StandardCharsets.UTF_8));
+            byte[] name = HEADER_NAMES.get(entry.getKey());
+            if (name != null) {
+                writer.appendHeader(name, entry.getValue());
+            } else {
+                writer.appendHeader(entry.getKey(), entry.getValue());
+            }
+        }
+        writer.endHead();
+    }
+    
+    /**
+     * Sends the remaining bytes of a buffer, e.g. a memory-mapped file. The
+     * buffer's position is not changed, so shared buffers can be passed
+     * as-is.
+     */
+    public void send(ByteBuffer content) throws IOException {
+        if (sent) {
+            throw new IllegalStateException("Response already sent");
+        }
+        
+        ByteBuffer body = content.duplicate();
+        contentLength(body.remaining());
+        renderHead();
+        sent = true;
+        if (headOnly) {
+            writer.send(EMPTY_BODY);
+            return;
+        }
+        writer.send(body);
+        bytesSent = content.remaining();
+    }
+    
+    /**
+     * Sends a file as the body, straight from the file system to the socket
+     * without reading it into memory. Set Content-Type before calling.
+     */
+    public void sendFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            sendFile(channel, 0, channel.size());
+        }
+    }
+    
+    /**
+     * Sends {@code count} bytes of an open file starting at {@code position}
+     */
+    public void sendFile(FileChannel file, long position, long count) throws IOException {
+        if (sent) {
+            throw new IllegalStateException("Response already sent");
+        }
+        
+        contentLength(count);
+        renderHead();
+        sent = true;
+        if (headOnly) {
+            writer.send(EMPTY_BODY);
+            return;
+        }
+        writer.sendFile(file, position, count);
+        bytesSent = count;
+    }
+    
+    // ==================== Conditional Requests ====================
+    
+    /**
+     * Answers a conditional GET or HEAD: if the request's If-None-Match or
+     * If-Modified-Since shows the client already has the current version
+     * (going by the ETag and Last-Modified headers set on this response),
+     * sends 304 Not Modified without a body and returns true.
+     */
+    public boolean checkNotModified(Request request) throws IOException {
+        if (sent || statusCode != 200
+                || !Preconditions.notModified(request, getHeader("ETag"), getHeader("Last-Modified"))) {
+            return false;
+        }
+        status(304);
+        // No body; any Content-Length describes the cached representation
+        renderHead();
+        writer.send(EMPTY_BODY);
+        sent = true;
+        return true;
+    }
+    
+    /**
+     * Opts this response in to body ETags: a 200 sent with
+     * {@link #send(byte[])} (and so json, html, text) without an ETag of its
+     * own gets one derived from its content, and becomes a 304 when the
+     * request already holds that version. The body is still rendered, but
+     * revalidations no longer transfer it.
+     */
+    public Response conditional(Request request) {
+        this.conditionalRequest = request;
+        return this;
+    }
+    
+    /**
+     * Strong ETag from a digest of the body and its length, distinct for
+     * each content coding
+     */
+    private static String bodyETag(byte[] content, String coding) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder etag = new StringBuilder(28).append('"');
+        for (int i = 0; i < 8; i++) {
+            etag.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+        }
+        etag.append('-').append(Integer.toHexString(content.length));
+        if (coding != null) {
+            etag.append('-').append(coding);
+        }
+        return etag.append('"').toString();
+    }
+    
+    // ==================== Compression ====================
+    
+    /**
+     * Opts this response in to compression: a body sent with
+     * {@link #send(byte[])} of at least {@code minSize} bytes and a
+     * compressible Content-Type is encoded with {@code coding}. Such
+     * responses get "Vary: Accept-Encoding" even when {@code coding} is
+     * null (the client accepts no compression), so caches keep the
+     * variants apart.
+     *
+     * @param coding "gzip", "deflate", or null for identity
+     * @param level  {@link java.util.zip.Deflater} compression level
+     */
+    public Response compress(String coding, int minSize, int level) {
+        this.compressionCoding = coding;
+        this.compressionThreshold = minSize;
+        this.compressionLevel = level;
+        return this;
+    }
+    
+    /**
+     * Decides whether this body gets compressed, adding Vary if it could be
+     *
+     * @return the coding to apply, or null
+     */
+    private String contentCoding(int length) {
+        if (compressionThreshold < 0 || length < compressionThreshold
+                || statusCode == 204 || statusCode == 206 || statusCode == 304
+                || getHeader("Content-Encoding") != null
+                || !Compression.isCompressible(getHeader("Content-Type"))) {
+            return null;
+        }
+        header("Vary", Compression.varyWithAcceptEncoding(getHeader("Vary")));
+        return compressionCoding;
+    }
+    
+    // ==================== Range Requests ====================
+    
+    /**
+     * Sends a file, honouring the request's Range and If-Range headers: a
+     * single range goes out as 206 Partial Content, several as
+     * multipart/byteranges, and an unsatisfiable one as 416. Only the
+     * requested regions of the file are read. Set Content-Type (and ETag or
+     * Last-Modified, for If-Range) before calling.
+     */
+    public void sendFile(Request request, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<ByteRange> ranges = requestedRanges(request, size);
+            if (ranges == null) {
+                sendFile(channel, 0, size);
+            } else {
+                sendRanges(ranges, size, channel, null);
+            }
+        }
+    }
+    
+    /**
+     * Sends a buffer (e.g. cached or memory-mapped file content), honouring
+     * Range and If-Range like {@link #sendFile(Request, Path)}
+     */
+    public void send(Request request, ByteBuffer content) throws IOException {
+        long size = content.remaining();
+        List<ByteRange> ranges = requestedRanges(request, size);
+        if (ranges == null) {
+            send(content);
+        } else {
+            sendRanges(ranges, size, null, content);
+        }
+    }
+    
+    /**
+     * Advertises range support and resolves the Range header
+     *
+     * @return the ranges to send, or null to send the whole body
+     */
+    private List<ByteRange> requestedRanges(Request request, long size) {
+        if (getHeader("Accept-Ranges") == null) {
+            header("Accept-Ranges", "bytes");
+        }
+        String range = request.getHeader("Range");
+        if (range == null || statusCode != 200 || !"GET".equals(request.getMethod())) {
+            return null;
+        }
+        if (!ByteRange.ifRangeMatches(request.getHeader("If-Range"), getHeader("ETag"), getHeader("Last-Modified"))) {
+            return null;
+        }
+        return ByteRange.parse(range, size);
+    }
+    
+    /**
+     * Sends the ranges from either the file or the buffer
+     */
+    private void sendRanges(List<ByteRange> ranges, long size, FileChannel file, ByteBuffer content) throws IOException {
+        if (ranges.isEmpty()) {
+            status(416);
+            header("Content-Range", "bytes */" + size);
+            send(new byte[0]);
+            return;
         }
         
-        // Blank line
-        output.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        status(206);
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            header("Content-Range", range.contentRange(size));
+            if (file != null) {
+                sendFile(file, range.getStart(), range.getLength());
+            } else {
+                send(slice(content, range));
+            }
+            return;
+        }
         
-        // Write body
-        if (content.length > 0) {
-            output.write(content);
+        // multipart/byteranges: each part gets its own small head
+        String contentType = getHeader("Content-Type");
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        String boundary = "mwu-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        byte[][] partHeads = new byte[ranges.size()][];
+        long length = 0;
+        for (int i = 0; i < partHeads.length; i++) {
+            ByteRange range = ranges.get(i);
+            partHeads[i] = ((i == 0 ? "" : "\r\n") + "--" + boundary + "\r\n"
+                    + "Content-Type: " + contentType + "\r\n"
+                    + "Content-Range: " + range.contentRange(size) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+            length += partHeads[i].length + range.getLength();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        length += closing.length;
+        
+        header("Content-Type", "multipart/byteranges; boundary=" + boundary);
+        contentLength(length);
+        renderHead();
+        sent = true;
+        if (headOnly) {
+            writer.send(EMPTY_BODY);
+            return;
+        }
+        for (int i = 0; i < partHeads.length; i++) {
+            ByteRange range = ranges.get(i);
+            // The first part head goes out with the response head
+            writer.appendBytes(partHeads[i]);
+            writer.writePending();
+            if (file != null) {
+                writer.writeFile(file, range.getStart(), range.getLength());
+            } else {
+                writer.writeRaw(slice(content, range));
+            }
+        }
+        writer.appendBytes(closing);
+        writer.writePending();
+        writer.flush();
+        bytesSent = length;
+    }
+    
+    private static ByteBuffer slice(ByteBuffer content, ByteRange range) {
+        ByteBuffer slice = content.duplicate();
+        int start = content.position() + (int) range.getStart();
+        slice.limit(start + (int) range.getLength());
+        slice.position(start);
+        return slice;
+    }
+    
+    // ==================== Streaming ====================
+    
+    /**
+     * Starts a streamed response and returns the body stream. Headers are
+     * sent now; the body goes out with chunked transfer encoding in chunks of
+     * the configured size, so it never has to be held in memory. If a
+     * Content-Length header was set, the body is sent as-is instead (the
+     * caller must write exactly that many bytes).
+     *
+     * Writes block while the client is not reading, up to the write timeout.
+     * Closing the stream ends the response; the server closes it for you
+     * otherwise. For HEAD, what is written to the stream is discarded.
+     */
+    public OutputStream stream() throws IOException {
+        if (streamingBody != null) {
+            return streamingBody;
+        }
+        if (sent) {
+            throw new IllegalStateException("Response already sent");
         }
         
-        output.flush();
+        boolean chunked = findHeader("Content-Length") == null;
+        if (chunked) {
+            if (chunkedAllowed) {
+                header("Transfer-Encoding", "chunked");
+            } else {
+                // HTTP/1.0: the end of the body is the end of the connection
+                header("Connection", "close");
+                chunked = false;
+            }
+        }
+        renderHead();
+        writer.sendHead();
         sent = true;
-        bytesSent = content.length;
+        streamingBody = new StreamingBody(chunked);
+        return streamingBody;
+    }
+    
+    public WritableByteChannel streamChannel() throws IOException {
+        return Channels.newChannel(stream());
+    }
+    
+    /**
+     * Completes a streamed body the handler left open. No-op otherwise.
+     */
+    public void finish() throws IOException {
+        if (streamingBody != null && !aborted) {
+            streamingBody.close();
+        }
+    }
+    
+    /**
+     * Gives up on a streamed body after an error. The response is left
+     * unterminated so the client can tell it is incomplete, and the
+     * connection must be closed.
+     */
+    public void abort() {
+        aborted = true;
+    }
+    
+    public boolean isAborted() {
+        return aborted;
+    }
+    
+    /**
+     * Streamed body: buffers up to one chunk, then writes it through (or
+     * drops it, for HEAD)
+     */
+    private class StreamingBody extends OutputStream {
+        private final boolean chunked;
+        private final byte[] buffer;
+        private int count = 0;
+        private boolean closed = false;
+        
+        StreamingBody(boolean chunked) {
+            this.chunked = chunked;
+            this.buffer = new byte[writer.getChunkSize()];
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) b;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            if (len >= buffer.length) {
+                // Large writes skip the buffer and go out as their own chunk
+                flushBuffer();
+                writeThrough(b, off, len);
+                return;
+            }
+            if (count + len > buffer.length) {
+                flushBuffer();
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+            flushBuffer();
+            writer.flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (closed || aborted) {
+                return;
+            }
+            closed = true;
+            flushBuffer();
+            if (headOnly) {
+                writer.flush();
+            } else if (chunked) {
+                writer.writeLastChunk();
+            } else {
+                writer.flush();
+            }
+        }
+        
+        private void flushBuffer() throws IOException {
+            if (count > 0) {
+                writeThrough(buffer, 0, count);
+                count = 0;
+            }
+        }
+        
+        private void writeThrough(byte[] b, int off, int len) throws IOException {
+            if (headOnly) {
+                return;
+            }
+            try {
+                if (chunked) {
+                    writer.writeChunk(b, off, len);
+                } else {
+                    writer.writeRaw(b, off, len);
+                }
+            } catch (IOException e) {
+                aborted = true;
+                throw e;
+            }
+            bytesSent += len;
+        }
+        
+        private void ensureOpen() throws IOException {
+            if (closed || aborted) {
+                throw new IOException("Response stream closed");
+            }
+        }
+    }
+    
+    /**
+     * Copies the block as a whole unless some of its headers are overridden,
+     * either on the response or by a later block
+     */
+    private void appendBlock(HeaderBlock block, int index) {
+        boolean overridden = false;
+        for (int j = 0; j < block.size() && !overridden; j++) {
+            overridden = isOverridden(block.nameAt(j), index);
+        }
+        if (!overridden) {
+            writer.appendBytes(block.encoded());
+            return;
+        }
+        for (int j = 0; j < block.size(); j++) {
+            if (!isOverridden(block.nameAt(j), index)) {
+                writer.appendHeader(block.nameAt(j), block.valueAt(j));
+            }
+        }
+    }
+    
+    private boolean isOverridden(String name, int blockIndex) {
+        if (!headers.isEmpty() && findHeader(name) != null) {
+            return true;
+        }
+        for (int i = blockIndex + 1; i < headerBlockCount; i++) {
+            if (headerBlocks[i].get(name) != null) {
+                return true;
+            }
+        }
+        return false;
     }
     
     // ==================== Convenience Methods ====================
@@ -174,6 +792,23 @@ public class Response {
         send(data);
     }
     
+    public void download(Path file, String filename) throws IOException {
+        header("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+        header("Content-Type", "application/octet-stream");
+        sendFile(file);
+    }
+    
+    /**
+     * Resumable download: honours Range requests, so interrupted transfers
+     * can continue where they stopped
+     */
+    public void download(Request request, Path file, String filename) throws IOException {
+        header("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+        header("Content-Type", "application/octet-stream");
+        header("Last-Modified", HttpDate.format(Files.getLastModifiedTime(file).toMillis()));
+        sendFile(request, file);
+    }
+    
     // ==================== Getters ====================
     
     public int getStatusCode() {
@@ -0,0 +1,311 @@
+package com.mwu.routing;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Per-connection response output.
+ *
+ * Responses render their status line and headers into a head buffer that
+ * is reused for every response on the connection, then head and body go
+ * out together in one gathering write. Channels that cannot gather get the
+ * body copied behind the head when it is small, so a typical response is
+ * still a single write.
+ */
+public final class ResponseWriter {
+    private static final int INITIAL_HEAD_SIZE = 1024;
+    /** Bodies up to this size are copied behind the head for non-gathering channels */
+    private static final int COALESCE_LIMIT = 8 * 1024;
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+    
+    private final WritableByteChannel channel;
+    private final OutputStream flushTarget;
+    private final ByteBuffer[] gather = new ByteBuffer[3];
+    private final byte[] chunkHeader = new byte[18];
+    private final int chunkSize;
+    private OutputStream outputStream;
+    
+    private byte[] head = new byte[INITIAL_HEAD_SIZE];
+    private int headLength = 0;
+    
+    public ResponseWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * @param chunkSize buffer size for streamed responses; each full buffer
+     *                  goes out as one chunk
+     */
+    public ResponseWriter(WritableByteChannel channel, int chunkSize) {
+        this.channel = channel;
+        this.flushTarget = null;
+        this.chunkSize = chunkSize;
+    }
+    
+    /**
+     * Writes through an OutputStream, which is flushed after each response
+     */
+    public ResponseWriter(OutputStream output) {
+        this.channel = Channels.newChannel(output);
+        this.flushTarget = output;
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+    }
+    
+    int getChunkSize() {
+        return chunkSize;
+    }
+    
+    /**
+     * Raw connection output, for interim responses and streamed bodies.
+     * Writes go straight to the connection.
+     */
+    public OutputStream getOutputStream() {
+        if (outputStream == null) {
+            outputStream = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+                
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    writeFully(ByteBuffer.wrap(b, off, len));
+                }
+                
+                @Override
+                public void flush() throws IOException {
+                    ResponseWriter.this.flush();
+                }
+            };
+        }
+        return outputStream;
+    }
+    
+    // ==================== Head Rendering ====================
+    
+    void beginHead() {
+        headLength = 0;
+    }
+    
+    void appendBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, head, headLength, bytes.length);
+        headLength += bytes.length;
+    }
+    
+    /**
+     * Appends a header whose name is already encoded as "Name: "
+     */
+    void appendHeader(byte[] encodedName, String value) {
+        appendBytes(encodedName);
+        appendAscii(value);
+        appendBytes(CRLF);
+    }
+    
+    void appendHeader(String name, String value) {
+        appendAscii(name);
+        ensureCapacity(2);
+        head[headLength++] = ':';
+        head[headLength++] = ' ';
+        appendAscii(value);
+        appendBytes(CRLF);
+    }
+    
+    void endHead() {
+        appendBytes(CRLF);
+    }
+    
+    private void appendAscii(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        int start = headLength;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // Rare: fall back to UTF-8 for the whole value
+                headLength = start;
+                appendBytes(value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            head[headLength++] = (byte) c;
+        }
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (headLength + extra > head.length) {
+            head = Arrays.copyOf(head, Math.max(head.length * 2, headLength + extra));
+        }
+    }
+    
+    // ==================== Writing ====================
+    
+    /**
+     * Writes the rendered head followed by the body
+     */
+    void send(byte[] body, int offset, int length) throws IOException {
+        send(ByteBuffer.wrap(body, offset, length));
+    }
+    
+    /**
+     * Writes the rendered head followed by the remaining bytes of the body
+     * buffer (heap, direct or memory-mapped)
+     */
+    void send(ByteBuffer body) throws IOException {
+        if (body.remaining() <= COALESCE_LIMIT && !(channel instanceof GatheringByteChannel)) {
+            int length = body.remaining();
+            ensureCapacity(length);
+            body.get(head, headLength, length);
+            headLength += length;
+        }
+        ByteBuffer headBuffer = ByteBuffer.wrap(head, 0, headLength);
+        if (!body.hasRemaining()) {
+            writeFully(headBuffer);
+        } else if (channel instanceof GatheringByteChannel) {
+            ByteBuffer[] buffers = { headBuffer, body };
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            while (body.hasRemaining()) {
+                gathering.write(buffers);
+            }
+        } else {
+            writeFully(headBuffer);
+            writeFully(body);
+        }
+        flush();
+        
+        // Don't pin a large head buffer for the life of the connection
+        if (head.length > 16 * INITIAL_HEAD_SIZE) {
+            head = new byte[INITIAL_HEAD_SIZE];
+        }
+        headLength = 0;
+    }
+    
+    /**
+     * Writes the rendered head, then {@code count} bytes of the file
+     * starting at {@code position} straight from the file to the connection
+     * (sendfile where the channel supports it), without copying through the
+     * heap.
+     */
+    void sendFile(FileChannel file, long position, long count) throws IOException {
+        writePending();
+        writeFile(file, position, count);
+        flush();
+    }
+    
+    /**
+     * Writes whatever has been rendered into the head buffer, without
+     * flushing, and empties it. Multi-part bodies use the head buffer to
+     * stage the small pieces between their larger parts.
+     */
+    void writePending() throws IOException {
+        writeFully(ByteBuffer.wrap(head, 0, headLength));
+        headLength = 0;
+    }
+    
+    /**
+     * Writes {@code count} bytes of the file starting at {@code position}
+     * as body data, without flushing
+     */
+    void writeFile(FileChannel file, long position, long count) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long transferred;
+            if (channel instanceof FileTransferTarget) {
+                transferred = ((FileTransferTarget) channel).transferFrom(file, position, end - position);
+            } else {
+                transferred = file.transferTo(position, end - position, channel);
+            }
+            if (transferred <= 0 && position >= file.size()) {
+                throw new EOFException("File truncated while sending");
+            }
+            position += transferred;
+        }
+    }
+    
+    /**
+     * Writes the rendered head on its own, ahead of a streamed body
+     */
+    void sendHead() throws IOException {
+        writePending();
+        flush();
+    }
+    
+    /**
+     * Writes one chunk of a chunked body: size line, data and CRLF in a
+     * single gathering write
+     */
+    void writeChunk(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        int pos = chunkHeader.length;
+        chunkHeader[--pos] = '\n';
+        chunkHeader[--pos] = '\r';
+        int remaining = length;
+        do {
+            chunkHeader[--pos] = HEX[remaining & 0xF];
+            remaining >>>= 4;
+        } while (remaining != 0);
+        
+        gather[0] = ByteBuffer.wrap(chunkHeader, pos, chunkHeader.length - pos);
+        gather[1] = ByteBuffer.wrap(data, offset, length);
+        gather[2] = ByteBuffer.wrap(CRLF);
+        try {
+            if (channel instanceof GatheringByteChannel) {
+                GatheringByteChannel gathering = (GatheringByteChannel) channel;
+                while (gather[2].hasRemaining()) {
+                    gathering.write(gather);
+                }
+            } else {
+                for (ByteBuffer buffer : gather) {
+                    writeFully(buffer);
+                }
+            }
+        } finally {
+            gather[0] = null;
+            gather[1] = null;
+            gather[2] = null;
+        }
+    }
+    
+    /**
+     * Ends a chunked body (no trailers)
+     */
+    void writeLastChunk() throws IOException {
+        writeFully(ByteBuffer.wrap(LAST_CHUNK));
+        flush();
+    }
+    
+    /**
+     * Writes body bytes as they are, for streamed bodies that are not chunked
+     */
+    void writeRaw(byte[] data, int offset, int length) throws IOException {
+        writeFully(ByteBuffer.wrap(data, offset, length));
+    }
+    
+    void writeRaw(ByteBuffer data) throws IOException {
+        writeFully(data);
+    }
+    
+    void flush() throws IOException {
+        if (flushTarget != null) {
+            flushTarget.flush();
+        }
+    }
+    
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
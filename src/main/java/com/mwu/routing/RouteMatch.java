@@ -0,0 +1,57 @@
+package com.mwu.routing;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The route a request matched and the path parameter values it captured.
+ *
+ * Immutable and owned by one request, so concurrent requests for the same
+ * route never see each other's values. Values sit in a flat array in the
+ * order of the route's parameters; names are resolved against the route.
+ */
+public final class RouteMatch {
+    private final ServerRoute route;
+    private final String[] values;
+    
+    RouteMatch(ServerRoute route, String[] values) {
+        this.route = route;
+        this.values = values;
+    }
+    
+    public ServerRoute getRoute() {
+        return route;
+    }
+    
+    public RouteHandler getHandler() {
+        return route.getHandler();
+    }
+    
+    /**
+     * @return the value captured for a parameter, or null if the route has
+     *         no such parameter
+     */
+    public String getParam(String name) {
+        int index = route.paramIndex(name);
+        return index != -1 ? values[index] : null;
+    }
+    
+    public int getParamCount() {
+        return values.length;
+    }
+    
+    /**
+     * Parameter values by name, as a new read-only map
+     */
+    public Map<String, String> getParams() {
+        if (values.length == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> params = new HashMap<>(values.length * 2);
+        for (int i = 0; i < values.length; i++) {
+            params.put(route.paramName(i), values[i]);
+        }
+        return Collections.unmodifiableMap(params);
+    }
+}
@@ -0,0 +1,163 @@
+package com.mwu.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled, immutable form of a {@link Router}'s routes, built once when
+ * the server starts.
+ *
+ * Methods are interned into an array with a {@link RouteTree} at the same
+ * index, so a lookup is an identity scan of a handful of method tokens and
+ * one trie walk: no map reads, no lists. Conflicting routes (the same
+ * method and equivalent patterns) are rejected when the table is built.
+ * For a path that has routes under other methods only, the table answers
+ * with the Allow value for a 405; these values are built up front for
+ * every combination of methods.
+ *
+ * Every GET route also answers HEAD, unless a HEAD route of its own
+ * matches first.
+ */
+public final class RouteTable {
+    /** Order of methods in Allow; any others follow alphabetically */
+    private static final List<String> METHOD_ORDER =
+            Arrays.asList("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS");
+    /** Beyond this many methods, Allow values are built on demand */
+    private static final int MAX_PRECOMPUTED_METHODS = 10;
+    
+    private final String[] methods;
+    private final RouteTree[] trees;
+    private final String[] allowByMask; // index: bit i set = methods[i] allowed
+    private final int getIndex; // -1 if there are no GET routes
+    private final int headIndex; // present whenever GET is, and may be without it
+    private final int routeCount;
+    
+    private RouteTable(String[] methods, RouteTree[] trees, int routeCount) {
+        this.methods = methods;
+        this.trees = trees;
+        this.routeCount = routeCount;
+        this.getIndex = Arrays.asList(methods).indexOf("GET");
+        this.headIndex = Arrays.asList(methods).indexOf("HEAD");
+        if (methods.length <= MAX_PRECOMPUTED_METHODS) {
+            allowByMask = new String[1 << methods.length];
+            for (int mask = 1; mask < allowByMask.length; mask++) {
+                allowByMask[mask] = allowValue(mask);
+            }
+        } else {
+            allowByMask = null;
+        }
+    }
+    
+    /**
+     * @param routes routes in registration order
+     * @throws IllegalStateException listing every conflict, if two routes
+     *         for the same method have equivalent patterns
+     */
+    static RouteTable compile(List<ServerRoute> routes) {
+        Map<String, RouteTree> byMethod = new LinkedHashMap<>();
+        List<String> conflicts = new ArrayList<>();
+        for (ServerRoute route : routes) {
+            RouteTree tree = byMethod.computeIfAbsent(route.getMethod(), k -> new RouteTree());
+            ServerRoute existing = tree.add(route);
+            if (existing != null) {
+                conflicts.add(route.getMethod() + " " + route.getPattern()
+                        + " conflicts with " + existing.getMethod() + " " + existing.getPattern());
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            throw new IllegalStateException("Conflicting routes: " + String.join("; ", conflicts));
+        }
+        if (byMethod.containsKey("GET")) {
+            // Falls back to the GET routes, so it may be empty
+            byMethod.computeIfAbsent("HEAD", k -> new RouteTree());
+        }
+        
+        String[] methods = byMethod.keySet().toArray(new String[0]);
+        Arrays.sort(methods, Comparator.comparingInt(RouteTable::methodRank).thenComparing(Comparator.naturalOrder()));
+        RouteTree[] trees = new RouteTree[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            trees[i] = byMethod.get(methods[i]);
+            methods[i] = methods[i].intern();
+        }
+        return new RouteTable(methods, trees, routes.size());
+    }
+    
+    private static int methodRank(String method) {
+        int rank = METHOD_ORDER.indexOf(method);
+        return rank != -1 ? rank : METHOD_ORDER.size();
+    }
+    
+    /**
+     * @return the route and its parameter values, or null if no route for
+     *         this method matches
+     */
+    public RouteMatch match(String method, String path) {
+        int index = methodIndex(method);
+        if (index == -1) {
+            return null;
+        }
+        ServerRoute route = trees[index].match(path);
+        if (route == null && index == headIndex && getIndex != -1) {
+            route = trees[getIndex].match(path);
+        }
+        return route != null ? route.matchOf(path) : null;
+    }
+    
+    /**
+     * The methods that do have a route for this path, for the Allow header
+     * of a 405 response
+     *
+     * @return e.g. "GET, POST", or null if no route matches the path at all
+     */
+    public String allowedMethods(String path) {
+        int mask = 0;
+        for (int i = 0; i < trees.length; i++) {
+            if (trees[i].match(path) != null) {
+                mask |= 1 << i;
+            }
+        }
+        if (mask == 0) {
+            return null;
+        }
+        if (getIndex != -1 && (mask & (1 << getIndex)) != 0) {
+            mask |= 1 << headIndex;
+        }
+        return allowByMask != null ? allowByMask[mask] : allowValue(mask);
+    }
+    
+    public int getRouteCount() {
+        return routeCount;
+    }
+    
+    private int methodIndex(String method) {
+        // Parsed methods are interned constants, so identity usually hits
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i] == method) {
+                return i;
+            }
+        }
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i].equals(method)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private String allowValue(int mask) {
+        StringBuilder allow = new StringBuilder();
+        for (int i = 0; i < methods.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                if (allow.length() > 0) {
+                    allow.append(", ");
+                }
+                allow.append(methods[i]);
+            }
+        }
+        return allow.toString();
+    }
+}
@@ -0,0 +1,160 @@
+package com.mwu.routing;
+
+/**
+ * Segment trie of the routes for one HTTP method.
+ *
+ * Each node is one path segment. A node has static children (looked up by
+ * hashing the segment in place, without a substring), at most one
+ * {@code :param} child, and at most one {@code *} catch-all route. A path
+ * is matched in one walk over its segments with static, then param, then
+ * catch-all precedence at every level, backing up only when a more
+ * specific branch leads nowhere. No regex, and nothing is allocated.
+ */
+final class RouteTree {
+    private final Node root = new Node(null, 0);
+    
+    /**
+     * Adds a route, unless one with an equivalent pattern (the same
+     * segments, whatever the parameter names) is already there
+     *
+     * @return the route already holding this pattern, or null if added
+     */
+    ServerRoute add(ServerRoute route) {
+        String[] segments = route.getSegments();
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (ServerRoute.isWildcard(segment)) {
+                if (node.wildcard != null) {
+                    return node.wildcard;
+                }
+                node.wildcard = route;
+                return null;
+            }
+            if (ServerRoute.isParam(segment)) {
+                if (node.param == null) {
+                    node.param = new Node(null, 0);
+                }
+                node = node.param;
+            } else {
+                node = node.addChild(segment);
+            }
+        }
+        if (node.route != null) {
+            return node.route;
+        }
+        node.route = route;
+        return null;
+    }
+    
+    /**
+     * @param path request path, starting with '/'
+     * @return the matching route, or null
+     */
+    ServerRoute match(String path) {
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        return find(root, path, 1);
+    }
+    
+    /**
+     * Matches the segment starting at {@code start} and everything after it
+     * below {@code node}
+     */
+    private static ServerRoute find(Node node, String path, int start) {
+        int end = path.indexOf('/', start);
+        if (end == -1) {
+            end = path.length();
+        }
+        boolean last = end == path.length();
+        
+        Node child = node.child(path, start, end);
+        if (child != null) {
+            ServerRoute route = last ? child.route : find(child, path, end + 1);
+            if (route != null) {
+                return route;
+            }
+        }
+        if (node.param != null && end > start) {
+            ServerRoute route = last ? node.param.route : find(node.param, path, end + 1);
+            if (route != null) {
+                return route;
+            }
+        }
+        return node.wildcard;
+    }
+    
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+    
+    private static final class Node {
+        private static final Node[] EMPTY = new Node[0];
+        
+        private final String segment; // null for param nodes and the root
+        private final int hash;
+        private Node next; // chain within the parent's table
+        
+        private Node[] children = EMPTY; // chained hash table, power-of-two size
+        private int childCount;
+        private Node param;
+        private ServerRoute wildcard;
+        private ServerRoute route;
+        
+        Node(String segment, int hash) {
+            this.segment = segment;
+            this.hash = hash;
+        }
+        
+        Node child(String path, int start, int end) {
+            if (childCount == 0) {
+                return null;
+            }
+            int length = end - start;
+            int h = hash(path, start, end);
+            for (Node child = children[h & (children.length - 1)]; child != null; child = child.next) {
+                if (child.hash == h && child.segment.length() == length
+                        && path.regionMatches(start, child.segment, 0, length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+        
+        Node addChild(String segment) {
+            Node existing = child(segment, 0, segment.length());
+            if (existing != null) {
+                return existing;
+            }
+            if (childCount + 1 > children.length * 3 / 4) {
+                resize(Math.max(4, children.length * 2));
+            }
+            Node child = new Node(segment, segment.hashCode());
+            int slot = child.hash & (children.length - 1);
+            child.next = children[slot];
+            children[slot] = child;
+            childCount++;
+            return child;
+        }
+        
+        private void resize(int size) {
+            Node[] old = children;
+            children = new Node[size];
+            for (Node head : old) {
+                Node child = head;
+                while (child != null) {
+                    Node following = child.next;
+                    int slot = child.hash & (size - 1);
+                    child.next = children[slot];
+                    children[slot] = child;
+                    child = following;
+                }
+            }
+        }
+    }
+}
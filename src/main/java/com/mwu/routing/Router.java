@@ -1,24 +1,48 @@
 package com.mwu.routing;
 
+import com.mwu.middleware.Middleware;
+import com.mwu.middleware.MiddlewareChain;
+import com.mwu.middleware.PathFilteredMiddleware;
+
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
- * Advanced router with pattern matching, route parameters, and route groups
+ * Advanced router with pattern matching, route parameters, and route groups.
+ *
+ * Routes are collected in registration order and compiled into an
+ * immutable {@link RouteTable}: a {@link RouteTree} per HTTP method, so
+ * the cost of a lookup depends on the depth of the path, not the number
+ * of routes. At each segment a literal beats a {@code :param}, which
+ * beats a {@code *} catch-all.
+ *
+ * Groups add their routes to the router they came from and may nest. A
+ * group's middleware runs, outer groups first, for that group's routes
+ * only; it is composed into each route's handler when the table is
+ * compiled, not looked up per request.
  */
 public class Router {
-    private final Map<String, List<ServerRoute>> routes;
-    private String prefix = "";
+    private final Router root;
+    private final Router parent; // null for the root
+    private final String prefix;
+    private final List<Middleware> middleware = new ArrayList<>();
+    private final List<Registration> routes; // root only
+    private volatile RouteTable table; // root only; compiled on first match
+    private String sealedReason; // root only; null while routes may be added
     
     public Router() {
-        this.routes = new ConcurrentHashMap<>();
+        this.root = this;
+        this.parent = null;
+        this.prefix = "";
+        this.routes = new ArrayList<>();
     }
     
-    private Router(String prefix) {
-        this();
+    private Router(Router parent, String prefix) {
+        this.root = parent.root;
+        this.parent = parent;
         this.prefix = prefix;
+        this.routes = null;
     }
     
     // ==================== Route Registration ====================
@@ -27,138 +51,250 @@ public class Router {
         String fullPath = prefix + path;
         ServerRoute route = new ServerRoute(method, fullPath, handler);
         
-        routes.computeIfAbsent(method, k -> new ArrayList<>()).add(route);
+        synchronized (root) {
+            checkOpen();
+            root.routes.add(new Registration(route, this));
+            root.table = null;
+        }
     }
     
-    // ==================== Route Matching ====================
+    public Router get(String path, RouteHandler handler) {
+        addRoute("GET", path, handler);
+        return this;
+    }
     
-    public ServerRoute match(String method, String path) {
-        List<ServerRoute> list = routes.get(method);
-        if (list == null) return null;
-
-        for (ServerRoute route : list) {
-            if (route.matches(path)) {
-                route.setParams(route.extractParams(path));
-                return route;
-            }
-        }
-        return null;
+    public Router post(String path, RouteHandler handler) {
+        addRoute("POST", path, handler);
+        return this;
     }
     
-    // ==================== Route Groups ====================
+    public Router put(String path, RouteHandler handler) {
+        addRoute("PUT", path, handler);
+        return this;
+    }
     
-    public Router group(String prefix) {
-        return new Router(this.prefix + prefix);
+    public Router delete(String path, RouteHandler handler) {
+        addRoute("DELETE", path, handler);
+        return this;
     }
     
-    // ==================== Info ====================
+    public Router patch(String path, RouteHandler handler) {
+        addRoute("PATCH", path, handler);
+        return this;
+    }
     
-    public int getRouteCount() {
-        return routes.values().stream().mapToInt(List::size).sum();
+    /**
+     * Adds middleware for the routes of this router and its nested groups,
+     * including routes added before this call
+     */
+    public Router use(Middleware middleware) {
+        synchronized (root) {
+            checkOpen();
+            this.middleware.add(middleware);
+            root.table = null;
+        }
+        return this;
     }
     
-    public List<String> getAllRoutes() {
-        List<String> allRoutes = new ArrayList<>();
-        
-        for (Map.Entry<String, List<ServerRoute>> entry : routes.entrySet()) {
-            String method = entry.getKey();
-            for (ServerRoute route : entry.getValue()) {
-                allRoutes.add(method + " " + route.getPattern());
+    /**
+     * Rejects further routes and middleware, on this router and all its
+     * groups, with an IllegalStateException carrying {@code reason}. For
+     * when the compiled table is in service and later changes would never
+     * reach it. Copies start open.
+     */
+    public void seal(String reason) {
+        synchronized (root) {
+            root.sealedReason = reason;
+        }
+    }
+    
+    /**
+     * Accepts routes and middleware again after {@link #seal(String)}
+     */
+    public void unseal() {
+        synchronized (root) {
+            root.sealedReason = null;
+        }
+    }
+    
+    private void checkOpen() {
+        if (root.sealedReason != null) {
+            throw new IllegalStateException(root.sealedReason);
+        }
+    }
+    
+    /**
+     * Whether a route with exactly this method and pattern is registered
+     */
+    public boolean hasRoute(String method, String path) {
+        String fullPath = prefix + path;
+        synchronized (root) {
+            for (Registration registration : root.routes) {
+                ServerRoute route = registration.route;
+                if (route.getMethod().equals(method) && route.getPattern().equals(fullPath)) {
+                    return true;
+                }
             }
         }
-        
-        return allRoutes;
+        return false;
     }
-}
-
-/**
- * Represents a single route with pattern matching
- */
-class Route {
-    private final String method;
-    private final String pattern;
-    private final RouteHandler handler;
-    private final Pattern compiledPattern;
-    private final List<String> paramNames;
-    
-    public Route(String method, String pattern, RouteHandler handler) {
-        this.method = method;
-        this.pattern = pattern;
-        this.handler = handler;
-        this.paramNames = new ArrayList<>();
-        this.compiledPattern = compilePattern(pattern);
-    }
-    
-    private Pattern compilePattern(String pattern) {
-        // Convert route pattern to regex
-        // Example: /users/:id -> /users/([^/]+)
-        //          /files/*path -> /files/(.*)
-        
-        StringBuilder regex = new StringBuilder("^");
-        String[] segments = pattern.split("/");
-        
-        for (int i = 0; i < segments.length; i++) {
-            String segment = segments[i];
-            
-            if (segment.isEmpty() && i == 0) {
-                continue; // Skip leading slash
+    
+    /**
+     * Compiles the routes registered so far, each with its group
+     * middleware. Later registrations do not affect the returned table.
+     *
+     * @throws IllegalStateException if two routes conflict
+     */
+    public RouteTable compile() {
+        synchronized (root) {
+            RouteTable compiled = root.table;
+            if (compiled == null) {
+                compiled = compile(Collections.emptyList(), UnaryOperator.identity());
+                root.table = compiled;
             }
-            
-            regex.append("/");
-            
-            if (segment.startsWith(":")) {
-                // Named parameter
-                String paramName = segment.substring(1);
-                paramNames.add(paramName);
-                regex.append("([^/]+)");
-            } else if (segment.equals("*") || segment.startsWith("*")) {
-                // Wildcard
-                if (segment.length() > 1) {
-                    paramNames.add(segment.substring(1));
-                } else {
-                    paramNames.add("wildcard");
+            return compiled;
+        }
+    }
+    
+    /**
+     * Compiles the routes with each one's whole chain folded into its
+     * handler: {@code outer} middleware first, then the route's group
+     * middleware, then {@code terminal} applied to the route's own handler.
+     * A {@link PathFilteredMiddleware} in {@code outer} is decided against
+     * the route pattern here, so it is only checked per request when the
+     * pattern's parameters straddle its prefix.
+     *
+     * @throws IllegalStateException if two routes conflict
+     */
+    public RouteTable compile(List<Middleware> outer, UnaryOperator<RouteHandler> terminal) {
+        synchronized (root) {
+            List<ServerRoute> compiled = new ArrayList<>(root.routes.size());
+            for (Registration registration : root.routes) {
+                ServerRoute route = registration.route;
+                List<Middleware> chain = new ArrayList<>();
+                for (Middleware middleware : outer) {
+                    Middleware resolved = middleware instanceof PathFilteredMiddleware
+                            ? ((PathFilteredMiddleware) middleware).resolveFor(route.getPattern())
+                            : middleware;
+                    if (resolved != null) {
+                        chain.add(resolved);
+                    }
+                }
+                registration.group.collectMiddleware(chain);
+                
+                RouteHandler handler = terminal.apply(route.getHandler());
+                if (!chain.isEmpty()) {
+                    handler = MiddlewareChain.compose(chain, handler);
                 }
-                regex.append("(.*)");
-            } else {
-                // Literal segment
-                regex.append(Pattern.quote(segment));
+                compiled.add(handler == route.getHandler()
+                        ? route
+                        : new ServerRoute(route.getMethod(), route.getPattern(), handler));
             }
+            return RouteTable.compile(compiled);
         }
-        
-        regex.append("$");
-        return Pattern.compile(regex.toString());
     }
     
-    public boolean matches(String path) {
-        return compiledPattern.matcher(path).matches();
+    /**
+     * Appends the middleware of the enclosing groups, then this group's own
+     */
+    private void collectMiddleware(List<Middleware> chain) {
+        if (parent != null) {
+            parent.collectMiddleware(chain);
+        }
+        chain.addAll(middleware);
     }
     
-    public Map<String, String> getParams() {
-        return new HashMap<>(); // Will be populated during matching
+    // ==================== Route Matching ====================
+    
+    /**
+     * @return the route and its parameter values for this request, or null
+     *         if no route matches
+     */
+    public RouteMatch match(String method, String path) {
+        RouteTable compiled = root.table;
+        if (compiled == null) {
+            compiled = compile();
+        }
+        return compiled.match(method, path);
     }
     
-    public Map<String, String> extractParams(String path) {
-        Map<String, String> params = new HashMap<>();
-        Matcher matcher = compiledPattern.matcher(path);
-        
-        if (matcher.matches()) {
-            for (int i = 0; i < paramNames.size() && i < matcher.groupCount(); i++) {
-                params.put(paramNames.get(i), matcher.group(i + 1));
+    /**
+     * A new router holding the routes registered so far, for building a
+     * replacement routing table on top of them. Groups are copied with
+     * their middleware as it is now, so later changes to this router do
+     * not reach the copy.
+     */
+    public Router copy() {
+        Router copy = new Router();
+        synchronized (root) {
+            Map<Router, Router> groups = new IdentityHashMap<>();
+            groups.put(root, copy);
+            copy.middleware.addAll(root.middleware);
+            for (Registration registration : root.routes) {
+                copy.routes.add(new Registration(registration.route, copyGroup(registration.group, groups)));
             }
         }
-        
-        return params;
+        return copy;
+    }
+    
+    /**
+     * The copy of a group, made along with its enclosing groups on first use
+     */
+    private static Router copyGroup(Router group, Map<Router, Router> copies) {
+        Router copied = copies.get(group);
+        if (copied == null) {
+            copied = new Router(copyGroup(group.parent, copies), group.prefix);
+            copied.middleware.addAll(group.middleware);
+            copies.put(group, copied);
+        }
+        return copied;
+    }
+    
+    // ==================== Route Groups ====================
+    
+    public Router group(String prefix) {
+        return new Router(this, this.prefix + prefix);
     }
     
-    public String getMethod() {
-        return method;
+    /**
+     * Configures a group in place, e.g.
+     * {@code router.group("/admin", admin -> admin.use(auth).get("/stats", handler))}
+     */
+    public Router group(String prefix, Consumer<Router> groupConfig) {
+        groupConfig.accept(group(prefix));
+        return this;
     }
     
-    public String getPattern() {
-        return pattern;
+    // ==================== Info ====================
+    
+    public int getRouteCount() {
+        synchronized (root) {
+            return root.routes.size();
+        }
+    }
+    
+    public List<String> getAllRoutes() {
+        List<String> allRoutes = new ArrayList<>();
+        
+        synchronized (root) {
+            for (Registration registration : root.routes) {
+                allRoutes.add(registration.route.getMethod() + " " + registration.route.getPattern());
+            }
+        }
+        
+        return allRoutes;
     }
     
-    public RouteHandler getHandler() {
-        return handler;
+    /**
+     * A route and the router or group it was added through
+     */
+    private static final class Registration {
+        final ServerRoute route;
+        final Router group;
+        
+        Registration(ServerRoute route, Router group) {
+            this.route = route;
+            this.group = group;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,58 +1,166 @@
 package com.mwu.routing;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * A route pattern and its handler. Patterns are '/'-separated segments:
+ * literal text, {@code :name} for one non-empty segment, or a final
+ * {@code *name} (or bare {@code *}, captured as "wildcard") for the rest of
+ * the path, slashes included.
+ *
+ * Routes are shared by every request; what one request matched is a
+ * {@link RouteMatch} of its own.
+ */
 public class ServerRoute {
     private final String method;
     private final String path;
     private final RouteHandler handler;
-    private Map<String, String> params;
-    private final Pattern pathPattern;
+    private final String[] segments;
+    private final boolean[] captures; // per segment: a :param or the wildcard
+    private final String[] paramNames; // by parameter index, in pattern order
+    private RouteMatch emptyMatch; // shared by every match of a route without parameters; made on first use
 
     public ServerRoute(String method, String path, RouteHandler handler) {
         this.method = method;
         this.path = path;
         this.handler = handler;
-        this.params = new HashMap<>();
-        this.pathPattern = compilePathPattern(path);
+        this.segments = (path.startsWith("/") ? path.substring(1) : path).split("/", -1);
+        this.captures = new boolean[segments.length];
+
+        String[] names = new String[segments.length];
+        int count = 0;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (isWildcard(segment)) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("Wildcard must be the last segment: " + path);
+                }
+                names[count++] = segment.length() > 1 ? segment.substring(1) : "wildcard";
+                captures[i] = true;
+            } else if (isParam(segment)) {
+                if (segment.length() == 1) {
+                    throw new IllegalArgumentException("Route parameter without a name: " + path);
+                }
+                names[count++] = segment.substring(1);
+                captures[i] = true;
+            }
+        }
+        this.paramNames = Arrays.copyOf(names, count);
+    }
+
+    static boolean isParam(String segment) {
+        return segment.startsWith(":");
+    }
+
+    static boolean isWildcard(String segment) {
+        return segment.startsWith("*");
     }
 
-    private Pattern compilePathPattern(String path) {
-        // Convert path like "/users/:id/posts/:postId" to regex pattern
-        String regex = path.replaceAll(":[\\w]+", "([\\w-]+)");
-        regex = "^" + regex + "$";
-        return Pattern.compile(regex);
+    String[] getSegments() {
+        return segments;
     }
 
     public boolean matches(String path) {
-        return pathPattern.matcher(path).matches();
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            return false;
+        }
+        int start = 1;
+        for (int i = 0; i < segments.length; i++) {
+            if (start > path.length()) {
+                return false;
+            }
+            String segment = segments[i];
+            if (isWildcard(segment)) {
+                return true;
+            }
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            if (captures[i]) {
+                if (end == start) {
+                    return false;
+                }
+            } else if (segment.length() != end - start || !path.regionMatches(start, segment, 0, end - start)) {
+                return false;
+            }
+            start = end + 1;
+        }
+        return start == path.length() + 1;
     }
 
+    /**
+     * @return the path's parameter values by name, empty if the path does
+     *         not match
+     */
     public Map<String, String> extractParams(String path) {
-        Map<String, String> extractedParams = new HashMap<>();
-        Matcher matcher = pathPattern.matcher(path);
-        
-        if (matcher.matches()) {
-            // Extract parameter names from original path
-            Pattern paramPattern = Pattern.compile(":(\\w+)");
-            Matcher paramMatcher = paramPattern.matcher(this.path);
-            
-            int groupIndex = 1;
-            while (paramMatcher.find()) {
-                String paramName = paramMatcher.group(1);
-                String paramValue = matcher.group(groupIndex);
-                extractedParams.put(paramName, paramValue);
-                groupIndex++;
+        if (!matches(path)) {
+            return Collections.emptyMap();
+        }
+        return matchOf(path).getParams();
+    }
+
+    /**
+     * The match for a path this route is known to match. Routes without
+     * parameters return one shared instance.
+     */
+    RouteMatch matchOf(String path) {
+        if (paramNames.length == 0) {
+            // RouteMatch is immutable, so a racing first use at worst makes two
+            RouteMatch match = emptyMatch;
+            if (match == null) {
+                match = new RouteMatch(this, paramNames);
+                emptyMatch = match;
             }
+            return match;
         }
-        
-        return extractedParams;
+        String[] values = new String[paramNames.length];
+        int param = 0;
+        int start = 1;
+        for (int i = 0; i < segments.length; i++) {
+            if (isWildcard(segments[i])) {
+                values[param] = path.substring(Math.min(start, path.length()));
+                break;
+            }
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            if (captures[i]) {
+                values[param++] = path.substring(start, end);
+            }
+            start = end + 1;
+        }
+        return new RouteMatch(this, values);
+    }
+
+    /**
+     * Position of a parameter in a match's values, or -1
+     */
+    int paramIndex(String name) {
+        for (int i = 0; i < paramNames.length; i++) {
+            if (paramNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    // Getters and setters
+    String paramName(int index) {
+        return paramNames[index];
+    }
+
+    /**
+     * Parameter names in pattern order
+     */
+    public List<String> getParamNames() {
+        return Collections.unmodifiableList(Arrays.asList(paramNames));
+    }
+
+    // Getters
     public String getMethod() {
         return method;
     }
@@ -65,15 +173,7 @@ public class ServerRoute {
         return handler;
     }
 
-    public Map<String, String> getParams() {
-        return params;
-    }
-
-    public void setParams(Map<String, String> params) {
-        this.params = params;
-    }
-
     public String getPattern() {
         return path;
     }
-}
\ No newline at end of file
+}
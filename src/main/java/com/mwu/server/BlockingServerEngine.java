@@ -0,0 +1,124 @@
+package com.mwu.server;
+
+import com.mwu.logger.Logger;
+import com.mwu.routing.HttpParseException;
+import com.mwu.routing.Request;
+import com.mwu.routing.RequestParser;
+import com.mwu.routing.ResponseWriter;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Classic engine: blocking accept with one worker thread per active
+ * connection. Uses channels in blocking mode so responses can go out with
+ * gathering writes.
+ */
+public class BlockingServerEngine implements ServerEngine {
+    private static final Logger logger = new Logger();
+    
+    private ServerSocketChannel serverChannel;
+    private WriteWatchdog watchdog;
+    private volatile boolean running = false;
+    
+    @Override
+    public void bind(InetSocketAddress address) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 50);
+        running = true;
+    }
+    
+    @Override
+    public void serve(ConnectionProcessor processor, ExecutorService workers) {
+        watchdog = new WriteWatchdog(processor.getConfig().getWriteTimeout());
+        while (running) {
+            try {
+                SocketChannel client = serverChannel.accept();
+                try {
+                    workers.execute(() -> handleConnection(client, processor, workers));
+                } catch (RejectedExecutionException e) {
+                    client.close();
+                }
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Error accepting connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private void handleConnection(SocketChannel channel, ConnectionProcessor processor, ExecutorService workers) {
+        Socket socket = channel.socket();
+        WriteWatchdog.GuardedChannel guarded = watchdog.guard(channel);
+        try {
+            // Idle keep-alive connections are dropped after the connection timeout
+            socket.setSoTimeout(processor.getConfig().getConnectionTimeout());
+            ConnectionInput input = new ConnectionInput(socket.getInputStream());
+            ResponseWriter output = new ResponseWriter(guarded, processor.getConfig().getResponseChunkSize());
+            RequestParser parser = new RequestParser(processor.getConfig());
+            
+            int requestsServed = 0;
+            boolean keepAlive = true;
+            
+            while (keepAlive && running) {
+                Request request;
+                try {
+                    request = input.readRequest(parser, output.getOutputStream(), socket);
+                } catch (HttpParseException e) {
+                    processor.reject(e, output);
+                    break;
+                }
+                if (request == null) {
+                    break; // Client closed the connection
+                }
+                keepAlive = processor.process(request, output, ++requestsServed, !isSaturated(workers));
+            }
+        } catch (SocketTimeoutException e) {
+            // Idle timeout expired, close quietly
+        } catch (IOException e) {
+            logger.error("Error handling request: " + e.getMessage());
+        } finally {
+            // Close socket
+            try {
+                guarded.close();
+            } catch (IOException e) {
+                logger.error("Error closing socket: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * An idle keep-alive connection pins a pool thread here, so once
+     * connections start queueing for a thread we stop offering keep-alive
+     * and let the queued ones in.
+     */
+    private boolean isSaturated(ExecutorService workers) {
+        return workers instanceof ThreadPoolExecutor
+                && !((ThreadPoolExecutor) workers).getQueue().isEmpty();
+    }
+    
+    @Override
+    public void stop() {
+        running = false;
+        if (watchdog != null) {
+            watchdog.shutdown();
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error closing server socket: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public String getName() {
+        return "blocking";
+    }
+}
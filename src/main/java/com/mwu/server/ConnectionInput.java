@@ -0,0 +1,89 @@
+package com.mwu.server;
+
+import com.mwu.routing.HttpParseException;
+import com.mwu.routing.Request;
+import com.mwu.routing.RequestParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Per-connection read buffer for the blocking engine. Request heads are
+ * parsed straight out of the buffer; the bytes that follow are served to
+ * the body reader and then to the next request.
+ */
+final class ConnectionInput extends InputStream {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    
+    private final InputStream source;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    
+    ConnectionInput(InputStream source) {
+        this.source = source;
+    }
+    
+    /**
+     * @return the next request, or null if the client closed the connection
+     *         between requests
+     */
+    Request readRequest(RequestParser parser, OutputStream output, Socket socket) throws IOException {
+        while (!parser.isComplete()) {
+            if (position == limit && !fill()) {
+                if (!parser.hasStarted()) {
+                    return null;
+                }
+                parser.reset();
+                throw new HttpParseException(400, "Incomplete request head");
+            }
+            position += parser.feed(buffer, position, limit - position);
+        }
+        return parser.build(this, output, socket);
+    }
+    
+    private boolean fill() throws IOException {
+        int read = source.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit) {
+            // Large reads bypass the buffer
+            if (len >= buffer.length) {
+                return source.read(b, off, len);
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+        return count;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + source.available();
+    }
+}
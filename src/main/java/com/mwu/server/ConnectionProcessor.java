@@ -0,0 +1,81 @@
+package com.mwu.server;
+
+import com.mwu.config.MWUConfig;
+import com.mwu.routing.HttpParseException;
+import com.mwu.routing.Request;
+import com.mwu.routing.Response;
+import com.mwu.routing.ResponseWriter;
+
+import java.io.IOException;
+
+/**
+ * Engine-independent request processing: keep-alive negotiation and
+ * hand-off to the framework's request handler
+ */
+public class ConnectionProcessor {
+    /** Unread body bytes we are willing to skip to keep a connection alive */
+    private static final long MAX_DISCARD_BYTES = 256 * 1024;
+    
+    private final MWUConfig config;
+    private final ExchangeHandler handler;
+    
+    public ConnectionProcessor(MWUConfig config, ExchangeHandler handler) {
+        this.config = config;
+        this.handler = handler;
+    }
+    
+    /**
+     * Handles one request and writes its response.
+     *
+     * @param requestsServed number of requests served on this connection,
+     *                       including this one
+     * @param keepAliveAllowed false if the engine wants the connection closed
+     *                         after this response regardless of the client
+     * @return true if the connection should be kept open for another request
+     */
+    public boolean process(Request request, ResponseWriter output, int requestsServed,
+                           boolean keepAliveAllowed) {
+        boolean keepAlive = keepAliveAllowed
+                && request.isKeepAlive()
+                && requestsServed < config.getMaxKeepAliveRequests();
+        
+        Response response = new Response(output, request.getProtocol());
+        if ("HEAD".equals(request.getMethod())) {
+            response.headOnly();
+        }
+        response.header("Connection", keepAlive ? "keep-alive" : "close");
+        if (keepAlive && "HTTP/1.0".equalsIgnoreCase(request.getProtocol())) {
+            response.header("Keep-Alive", "timeout=" + (config.getConnectionTimeout() / 1000));
+        }
+        
+        boolean completed;
+        try {
+            completed = handler.handle(request, response);
+        } finally {
+            request.releaseUploads();
+        }
+        
+        // Handlers may opt out of keep-alive by setting "Connection: close"
+        return keepAlive && completed && !response.isAborted()
+                && !"close".equalsIgnoreCase(response.getHeader("Connection"))
+                && request.discardBody(MAX_DISCARD_BYTES);
+    }
+    
+    /**
+     * Answers a request that could not be parsed. The caller closes the
+     * connection afterwards.
+     */
+    public void reject(HttpParseException error, ResponseWriter output) {
+        try {
+            Response response = new Response(output);
+            response.header("Connection", "close");
+            response.status(error.getStatusCode()).send(error.getMessage());
+        } catch (IOException e) {
+            // Client is gone, nothing more to do
+        }
+    }
+    
+    public MWUConfig getConfig() {
+        return config;
+    }
+}
@@ -0,0 +1,13 @@
+package com.mwu.server;
+
+import com.mwu.routing.Request;
+import com.mwu.routing.Response;
+
+@FunctionalInterface
+public interface ExchangeHandler {
+    /**
+     * @return true if the response was written cleanly and the connection
+     *         can be reused for another request
+     */
+    boolean handle(Request request, Response response);
+}
@@ -0,0 +1,579 @@
+package com.mwu.server;
+
+import com.mwu.routing.FileTransferTarget;
+import com.mwu.routing.HttpParseException;
+import com.mwu.routing.Request;
+import com.mwu.routing.RequestParser;
+import com.mwu.routing.ResponseWriter;
+
+import java.io.*;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * State shared between an event loop and the worker currently handling
+ * a request on this connection.
+ *
+ * The event loop fills the inbound buffer and drains the outbound queue;
+ * the worker sees them as ordinary blocking streams. Both directions are
+ * bounded: reads pause when the worker falls behind, and writers block
+ * when the client is not draining the socket.
+ */
+final class NioConnection {
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+    /** Upper bound on inbound bytes buffered ahead of the worker */
+    private static final int MAX_BUFFERED = 64 * 1024;
+    /** Outbound bytes queued before writers block */
+    private static final int OUTBOUND_HIGH_WATER = 256 * 1024;
+    
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final ConnectionProcessor processor;
+    private final ExecutorService workers;
+    private final RequestParser parser;
+    private final long timeoutNanos;
+    private final long writeTimeoutNanos;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final Condition writable = lock.newCondition();
+    
+    private SelectionKey key;
+    
+    // Inbound bytes not yet consumed, released while the connection is idle
+    private byte[] inbound;
+    private int readPos = 0;
+    private int writePos = 0;
+    
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+    private long pendingBytes = 0;
+    
+    private boolean processing = false;
+    private boolean readPaused = false;
+    private boolean writeRegistered = false;
+    private boolean inputClosed = false;
+    private boolean closeWhenFlushed = false;
+    private boolean closed = false;
+    private volatile long lastActivity = System.currentTimeMillis();
+    
+    private final InputStream input = new ConnectionInputStream();
+    private final ConnectionChannel output = new ConnectionChannel();
+    private int requestsServed = 0;
+    
+    NioConnection(SocketChannel channel, NioEventLoop loop, ConnectionProcessor processor,
+                  ExecutorService workers) {
+        this.channel = channel;
+        this.loop = loop;
+        this.processor = processor;
+        this.workers = workers;
+        this.parser = new RequestParser(processor.getConfig());
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(processor.getConfig().getConnectionTimeout());
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(processor.getConfig().getWriteTimeout());
+    }
+    
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+    
+    // ==================== Event Loop Side ====================
+    
+    void onReadable(ByteBuffer scratch) throws IOException {
+        int room;
+        lock.lock();
+        try {
+            room = MAX_BUFFERED - (writePos - readPos);
+            if (room <= 0) {
+                // Worker is behind; stop reading until it catches up
+                readPaused = true;
+                setInterest(SelectionKey.OP_READ, false);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        
+        scratch.clear();
+        scratch.limit(Math.min(room, scratch.capacity()));
+        int read = channel.read(scratch);
+        if (read == 0) {
+            return;
+        }
+        lastActivity = System.currentTimeMillis();
+        
+        boolean dispatch = false;
+        boolean finished = false;
+        HttpParseException invalid = null;
+        lock.lock();
+        try {
+            if (read < 0) {
+                inputClosed = true;
+                readable.signalAll();
+                setInterest(SelectionKey.OP_READ, false);
+                finished = !processing && outbound.isEmpty();
+            } else {
+                scratch.flip();
+                append(scratch);
+                if (processing) {
+                    readable.signalAll();
+                } else {
+                    try {
+                        dispatch = parseBuffered();
+                        processing = dispatch;
+                    } catch (HttpParseException e) {
+                        invalid = e;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        
+        if (dispatch) {
+            dispatch();
+        } else if (invalid != null) {
+            reject(invalid, new ResponseWriter(output));
+        } else if (finished) {
+            close();
+        }
+    }
+    
+    void onWritable() throws IOException {
+        boolean shouldClose = false;
+        lock.lock();
+        try {
+            if (flushOutbound()) {
+                writeRegistered = false;
+                setInterest(SelectionKey.OP_WRITE, false);
+                shouldClose = closeWhenFlushed;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (shouldClose) {
+            close();
+        }
+    }
+    
+    boolean isIdleSince(long cutoff) {
+        lock.lock();
+        try {
+            return !processing && lastActivity < cutoff;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void setInterest(int op, boolean enabled) {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        int ops = key.interestOps();
+        key.interestOps(enabled ? ops | op : ops & ~op);
+    }
+    
+    private void append(ByteBuffer data) {
+        int length = data.remaining();
+        if (inbound == null) {
+            inbound = new byte[Math.max(INITIAL_BUFFER_SIZE, length)];
+        }
+        if (writePos + length > inbound.length) {
+            // Compact, then grow if that was not enough
+            int buffered = writePos - readPos;
+            byte[] target = inbound;
+            if (buffered + length > inbound.length) {
+                target = new byte[Math.max(inbound.length * 2, buffered + length)];
+            }
+            System.arraycopy(inbound, readPos, target, 0, buffered);
+            inbound = target;
+            readPos = 0;
+            writePos = buffered;
+        }
+        data.get(inbound, writePos, length);
+        writePos += length;
+    }
+    
+    /**
+     * Feeds buffered bytes to the parser; it only consumes the request head,
+     * leaving any body bytes in the buffer. Must hold the lock.
+     *
+     * @return true once a complete request head has been parsed
+     */
+    private boolean parseBuffered() throws HttpParseException {
+        if (inbound != null) {
+            readPos += parser.feed(inbound, readPos, writePos - readPos);
+        }
+        return parser.isComplete();
+    }
+    
+    /**
+     * Writes as much queued output as the socket accepts. Must hold the lock.
+     *
+     * @return true if the queue is now empty
+     */
+    private boolean flushOutbound() throws IOException {
+        while (!outbound.isEmpty()) {
+            ByteBuffer head = outbound.peek();
+            int written = channel.write(head);
+            pendingBytes -= written;
+            if (written > 0) {
+                lastActivity = System.currentTimeMillis();
+            }
+            if (head.hasRemaining()) {
+                break;
+            }
+            outbound.poll();
+        }
+        if (pendingBytes < OUTBOUND_HIGH_WATER) {
+            writable.signalAll();
+        }
+        return outbound.isEmpty();
+    }
+    
+    // ==================== Worker Side ====================
+    
+    private void dispatch() {
+        try {
+            workers.execute(this::serveRequests);
+        } catch (RejectedExecutionException e) {
+            close();
+        }
+    }
+    
+    private void serveRequests() {
+        ResponseWriter writer = new ResponseWriter(output, processor.getConfig().getResponseChunkSize());
+        try {
+            while (true) {
+                Request request = parser.build(input, writer.getOutputStream(), channel.socket());
+                boolean keepAlive = processor.process(request, writer, ++requestsServed, true);
+                
+                if (!keepAlive) {
+                    closeAfterFlush();
+                    return;
+                }
+                if (!continueWithNextRequest()) {
+                    return;
+                }
+            }
+        } catch (HttpParseException e) {
+            reject(e, writer);
+        } catch (IOException | RuntimeException e) {
+            close();
+        }
+    }
+    
+    private void reject(HttpParseException error, ResponseWriter writer) {
+        processor.reject(error, writer);
+        closeAfterFlush();
+    }
+    
+    /**
+     * Keeps the worker if a pipelined request is already buffered, otherwise
+     * hands the connection back to the event loop.
+     */
+    private boolean continueWithNextRequest() throws HttpParseException {
+        boolean finished = false;
+        lock.lock();
+        try {
+            if (parseBuffered()) {
+                return true;
+            }
+            processing = false;
+            if (readPos == writePos) {
+                inbound = null;
+                readPos = 0;
+                writePos = 0;
+            }
+            if (inputClosed) {
+                // Client half-closed while we were busy; finish writing and go
+                closeWhenFlushed = true;
+                finished = outbound.isEmpty();
+            }
+            resumeReading();
+        } finally {
+            lock.unlock();
+        }
+        if (finished) {
+            close();
+        }
+        return false;
+    }
+    
+    private void closeAfterFlush() {
+        lock.lock();
+        try {
+            if (!outbound.isEmpty()) {
+                closeWhenFlushed = true;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        close();
+    }
+    
+    private void resumeReading() {
+        if (readPaused) {
+            readPaused = false;
+            loop.execute(() -> setInterest(SelectionKey.OP_READ, true));
+        }
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+    }
+    
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            readable.signalAll();
+            writable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        closeChannel();
+    }
+    
+    private void closeChannel() {
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+    
+    private class ConnectionInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            lock.lock();
+            try {
+                if (!awaitData()) {
+                    return -1;
+                }
+                return inbound[readPos++] & 0xFF;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                if (!awaitData()) {
+                    return -1;
+                }
+                int count = Math.min(len, writePos - readPos);
+                System.arraycopy(inbound, readPos, b, off, count);
+                readPos += count;
+                if (writePos - readPos < MAX_BUFFERED / 2) {
+                    resumeReading();
+                }
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return writePos - readPos;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        private boolean awaitData() throws IOException {
+            long remaining = timeoutNanos;
+            while (writePos == readPos) {
+                if (inputClosed) {
+                    return false;
+                }
+                ensureOpen();
+                resumeReading();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                try {
+                    remaining = readable.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Worker-side view of the socket. Writes go straight to the socket
+     * (gathering) while nothing is queued; whatever the socket does not take
+     * is copied to the outbound queue for the event loop to drain.
+     */
+    private class ConnectionChannel implements GatheringByteChannel, FileTransferTarget {
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return (int) write(new ByteBuffer[] { src }, 0, 1);
+        }
+        
+        @Override
+        public long write(ByteBuffer[] srcs) throws IOException {
+            return write(srcs, 0, srcs.length);
+        }
+        
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                total += srcs[i].remaining();
+            }
+            if (total == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                long left = total;
+                while (left > 0) {
+                    awaitWritable();
+                    if (outbound.isEmpty() && !writeRegistered) {
+                        long written = channel.write(srcs, offset, length);
+                        if (written > 0) {
+                            lastActivity = System.currentTimeMillis();
+                        }
+                        left -= written;
+                    }
+                    if (left > 0) {
+                        // Queue what the socket did not take, up to the high-water mark
+                        int chunk = (int) Math.min(left, OUTBOUND_HIGH_WATER - pendingBytes);
+                        ByteBuffer copy = ByteBuffer.allocate(chunk);
+                        for (int i = offset; i < offset + length && copy.hasRemaining(); i++) {
+                            ByteBuffer src = srcs[i];
+                            int n = Math.min(src.remaining(), copy.remaining());
+                            ByteBuffer slice = src.duplicate();
+                            slice.limit(slice.position() + n);
+                            copy.put(slice);
+                            src.position(src.position() + n);
+                        }
+                        copy.flip();
+                        outbound.add(copy);
+                        pendingBytes += chunk;
+                        left -= chunk;
+                        requestWrite();
+                    }
+                }
+                return total;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Waits until the outbound queue is below the high-water mark.
+         * Must hold the lock.
+         */
+        private void awaitWritable() throws IOException {
+            ensureOpen();
+            long remaining = writeTimeoutNanos;
+            while (pendingBytes >= OUTBOUND_HIGH_WATER) {
+                // Client is not keeping up; wait for the loop to drain
+                requestWrite();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Write timed out");
+                }
+                try {
+                    remaining = writable.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                ensureOpen();
+            }
+        }
+        
+        /**
+         * sendfile from the worker once queued output is out of the way;
+         * waits for the event loop to report the socket writable when its
+         * send buffer is full
+         */
+        @Override
+        public long transferFrom(FileChannel file, long position, long count) throws IOException {
+            lock.lock();
+            try {
+                long remaining = writeTimeoutNanos;
+                while (true) {
+                    ensureOpen();
+                    if (outbound.isEmpty() && !writeRegistered) {
+                        long transferred = file.transferTo(position, count, channel);
+                        if (transferred > 0) {
+                            lastActivity = System.currentTimeMillis();
+                            return transferred;
+                        }
+                        if (position >= file.size()) {
+                            return 0;
+                        }
+                        writeRegistered = true;
+                        loop.execute(() -> setInterest(SelectionKey.OP_WRITE, true));
+                    } else {
+                        requestWrite();
+                    }
+                    if (remaining <= 0) {
+                        throw new SocketTimeoutException("Write timed out");
+                    }
+                    try {
+                        remaining = writable.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+        
+        /**
+         * Responses never close the connection; the worker decides that
+         */
+        @Override
+        public void close() {
+        }
+        
+        /**
+         * Hands queued output to the event loop. Must hold the lock.
+         */
+        private void requestWrite() throws IOException {
+            if (writeRegistered || outbound.isEmpty()) {
+                return;
+            }
+            if (!flushOutbound()) {
+                writeRegistered = true;
+                loop.execute(() -> setInterest(SelectionKey.OP_WRITE, true));
+            }
+        }
+    }
+}
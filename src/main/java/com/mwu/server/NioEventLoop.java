@@ -0,0 +1,134 @@
+package com.mwu.server;
+
+import com.mwu.logger.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Single selector thread doing non-blocking reads and writes for its
+ * share of the connections
+ */
+class NioEventLoop implements Runnable {
+    private static final Logger logger = new Logger();
+    private static final long IDLE_SWEEP_INTERVAL_MS = 1000;
+    
+    private final Selector selector;
+    private final ConnectionProcessor processor;
+    private final ExecutorService workers;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private volatile boolean running = true;
+    private long lastSweep = System.currentTimeMillis();
+    
+    NioEventLoop(ConnectionProcessor processor, ExecutorService workers) throws IOException {
+        this.selector = Selector.open();
+        this.processor = processor;
+        this.workers = workers;
+    }
+    
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                NioConnection connection = new NioConnection(channel, this, processor, workers);
+                connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        });
+    }
+    
+    /**
+     * Runs a task on the loop thread. Interest-set changes must go through
+     * here so they are never raced against an in-progress select.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+    
+    @Override
+    public void run() {
+        try {
+            loop();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((NioConnection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+    
+    private void loop() {
+        while (running) {
+            try {
+                selector.select(IDLE_SWEEP_INTERVAL_MS);
+                
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable(readBuffer);
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        connection.close();
+                    }
+                }
+                
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= IDLE_SWEEP_INTERVAL_MS) {
+                    lastSweep = now;
+                    closeIdleConnections(now);
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                logger.error("Event loop error: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void closeIdleConnections(long now) {
+        long timeout = processor.getConfig().getConnectionTimeout();
+        for (SelectionKey key : selector.keys()) {
+            NioConnection connection = (NioConnection) key.attachment();
+            if (connection != null && connection.isIdleSince(now - timeout)) {
+                connection.close();
+            }
+        }
+    }
+    
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+    
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.mwu.server;
+
+import com.mwu.logger.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Selector-based engine. A small number of event-loop threads own all
+ * socket I/O; a connection only occupies a worker thread while a complete
+ * request head is buffered and being handled, so idle keep-alive
+ * connections cost no threads.
+ */
+public class NioServerEngine implements ServerEngine {
+    private static final Logger logger = new Logger();
+    
+    /** Pause after a failed accept, so a lasting failure (e.g. out of file descriptors) does not spin */
+    private static final long ACCEPT_RETRY_DELAY_MS = 100;
+    
+    private final int eventLoopCount;
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private NioEventLoop[] eventLoops;
+    private volatile boolean running = false;
+    
+    public NioServerEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    public NioServerEngine(int eventLoopCount) {
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("At least one event loop is required");
+        }
+        this.eventLoopCount = eventLoopCount;
+    }
+    
+    @Override
+    public void bind(InetSocketAddress address) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        running = true;
+    }
+    
+    @Override
+    public void serve(ConnectionProcessor processor, ExecutorService workers) throws IOException {
+        eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            try {
+                eventLoops[i] = new NioEventLoop(processor, workers);
+            } catch (IOException e) {
+                logger.error("Could not open selector: " + e.getMessage());
+                // Shuts down the loops already running and closes the server channel
+                stop();
+                throw e;
+            }
+            Thread thread = new Thread(eventLoops[i], "mwu-event-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        logger.info("NIO engine started with " + eventLoopCount + " event loop(s)");
+        
+        int next = 0;
+        while (running) {
+            try {
+                acceptSelector.select();
+                Iterator<SelectionKey> keys = acceptSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    keys.next();
+                    keys.remove();
+                    
+                    SocketChannel channel;
+                    while ((channel = serverChannel.accept()) != null) {
+                        try {
+                            channel.configureBlocking(false);
+                            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                        } catch (IOException e) {
+                            // Typically reset by the client already
+                            logger.error("Error setting up connection: " + e.getMessage());
+                            closeQuietly(channel);
+                            continue;
+                        }
+                        eventLoops[next].register(channel);
+                        next = (next + 1) % eventLoopCount;
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Error accepting connection: " + e.getMessage());
+                    try {
+                        Thread.sleep(ACCEPT_RETRY_DELAY_MS);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+    
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+    
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (acceptSelector != null) {
+                acceptSelector.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error closing server channel: " + e.getMessage());
+        }
+        
+        if (eventLoops != null) {
+            for (NioEventLoop loop : eventLoops) {
+                if (loop != null) {
+                    loop.shutdown();
+                }
+            }
+        }
+    }
+    
+    @Override
+    public String getName() {
+        return "nio";
+    }
+}
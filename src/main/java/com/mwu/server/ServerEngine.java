@@ -0,0 +1,31 @@
+package com.mwu.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Transport engine that accepts connections and feeds parsed requests
+ * to a {@link ConnectionProcessor}
+ */
+public interface ServerEngine {
+    /**
+     * Opens the listening socket. Called before lifecycle listeners run.
+     */
+    void bind(InetSocketAddress address) throws IOException;
+    
+    /**
+     * Serves connections until {@link #stop()} is called. Request handling
+     * is dispatched to the given worker pool.
+     *
+     * @throws IOException if serving cannot begin; the engine has then
+     *         released everything it opened, the bound socket included
+     */
+    void serve(ConnectionProcessor processor, ExecutorService workers) throws IOException;
+    
+    void stop();
+    
+    default String getName() {
+        return this.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,147 @@
+package com.mwu.server;
+
+import com.mwu.routing.FileTransferTarget;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write timeouts for blocking channels, which have none of their own.
+ *
+ * Writes go through a guarded channel that records when the current write
+ * started; once a second the watchdog closes any connection whose write
+ * has been stuck longer than the timeout, which fails the blocked write.
+ * Large writes are split so the timeout measures lack of progress, not
+ * total transfer time.
+ */
+final class WriteWatchdog {
+    /** Largest single write, so a slow but moving client is not cut off */
+    private static final int MAX_WRITE = 256 * 1024;
+    
+    private final long timeoutNanos;
+    private final Set<GuardedChannel> channels = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    
+    WriteWatchdog(long timeoutMillis) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mwu-write-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::sweep, 1, 1, TimeUnit.SECONDS);
+    }
+    
+    GuardedChannel guard(SocketChannel channel) {
+        GuardedChannel guarded = new GuardedChannel(channel);
+        channels.add(guarded);
+        return guarded;
+    }
+    
+    void shutdown() {
+        scheduler.shutdownNow();
+        channels.clear();
+    }
+    
+    private void sweep() {
+        long now = System.nanoTime();
+        for (GuardedChannel guarded : channels) {
+            long started = guarded.writeStarted;
+            if (started != 0 && now - started > timeoutNanos) {
+                try {
+                    guarded.channel.close();
+                } catch (IOException e) {
+                    // Already gone
+                }
+            }
+        }
+    }
+    
+    final class GuardedChannel implements GatheringByteChannel, FileTransferTarget {
+        private final SocketChannel channel;
+        private volatile long writeStarted = 0;
+        
+        private GuardedChannel(SocketChannel channel) {
+            this.channel = channel;
+        }
+        
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (src.remaining() <= MAX_WRITE) {
+                writeStarted = System.nanoTime();
+                try {
+                    return channel.write(src);
+                } finally {
+                    writeStarted = 0;
+                }
+            }
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + MAX_WRITE);
+            int written = write(slice);
+            src.position(src.position() + written);
+            return written;
+        }
+        
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                total += srcs[i].remaining();
+            }
+            if (total > MAX_WRITE) {
+                // Too big to gather in one timed write; go buffer by buffer
+                for (int i = offset; i < offset + length; i++) {
+                    if (srcs[i].hasRemaining()) {
+                        return write(srcs[i]);
+                    }
+                }
+            }
+            writeStarted = System.nanoTime();
+            try {
+                return channel.write(srcs, offset, length);
+            } finally {
+                writeStarted = 0;
+            }
+        }
+        
+        @Override
+        public long write(ByteBuffer[] srcs) throws IOException {
+            return write(srcs, 0, srcs.length);
+        }
+        
+        /**
+         * sendfile straight to the socket, in slices like ordinary writes
+         */
+        @Override
+        public long transferFrom(FileChannel file, long position, long count) throws IOException {
+            writeStarted = System.nanoTime();
+            try {
+                return file.transferTo(position, Math.min(count, MAX_WRITE), channel);
+            } finally {
+                writeStarted = 0;
+            }
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+        
+        /**
+         * Stops watching the channel and closes it
+         */
+        @Override
+        public void close() throws IOException {
+            channels.remove(this);
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.mwu.staticfiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-hashed URLs for the files in the public directory, e.g.
+ * "/js/app.js" is also served as "/js/app.3f9c2a1b.js". A hashed URL names
+ * one version of the file, so it can be cached forever; when the file
+ * changes it gets a new URL and the old one stops resolving.
+ *
+ * Kept current by {@link StaticFileCache}'s directory watcher. Hidden
+ * files and ".gz" sidecars are not fingerprinted.
+ */
+final class AssetManifest {
+    /** Hex digits of the content digest in a hashed URL */
+    private static final int HASH_LENGTH = 8;
+    
+    private final Path root;
+    private final Map<Path, Entry> byFile = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byUrl = new ConcurrentHashMap<>();
+    
+    AssetManifest(Path root) {
+        this.root = root;
+    }
+    
+    /**
+     * Hashes a new or changed file, replacing its previous URL
+     *
+     * @param attributes the file's attributes (links followed)
+     */
+    void add(Path file, BasicFileAttributes attributes) throws IOException {
+        String name = file.getFileName().toString();
+        if (!attributes.isRegularFile() || name.startsWith(".") || name.endsWith(".gz")) {
+            return;
+        }
+        String logical = urlPath(file);
+        int dot = name.lastIndexOf('.');
+        int insertAt = logical.length() - (dot > 0 ? name.length() - dot : 0);
+        String url = logical.substring(0, insertAt) + "." + hash(file) + logical.substring(insertAt);
+        
+        Entry entry = new Entry(file, logical, url, attributes.size(), attributes.lastModifiedTime().toMillis());
+        Entry previous = byFile.put(file, entry);
+        byUrl.put(url, entry);
+        if (previous != null && !previous.url.equals(url)) {
+            byUrl.remove(previous.url, previous);
+        }
+    }
+    
+    /**
+     * Removes a file, or everything below a directory
+     */
+    void remove(Path path) {
+        Entry removed = byFile.remove(path);
+        if (removed != null) {
+            byUrl.remove(removed.url, removed);
+            return;
+        }
+        byFile.values().removeIf(entry -> {
+            if (entry.file.startsWith(path)) {
+                byUrl.remove(entry.url, entry);
+                return true;
+            }
+            return false;
+        });
+    }
+    
+    /**
+     * @param path URL path of a file, e.g. "/js/app.js"
+     * @return its hashed URL path, or null if the file is not fingerprinted
+     */
+    String url(String path) {
+        Path file = root.resolve(path.startsWith("/") ? path.substring(1) : path).normalize();
+        Entry entry = byFile.get(file);
+        return entry != null ? entry.url : null;
+    }
+    
+    /**
+     * @param url request path, e.g. "/js/app.3f9c2a1b.js"
+     * @return the entry whose current hashed URL this is, or null
+     */
+    Entry resolve(String url) {
+        return byUrl.get(url);
+    }
+    
+    /**
+     * Plain URL paths to hashed ones, sorted
+     */
+    Map<String, String> snapshot() {
+        Map<String, String> urls = new TreeMap<>();
+        for (Entry entry : byFile.values()) {
+            urls.put(entry.logical, entry.url);
+        }
+        return urls;
+    }
+    
+    void clear() {
+        byFile.clear();
+        byUrl.clear();
+    }
+    
+    int size() {
+        return byFile.size();
+    }
+    
+    private String urlPath(Path file) {
+        String relative = root.relativize(file).toString();
+        if (File.separatorChar != '/') {
+            relative = relative.replace(File.separatorChar, '/');
+        }
+        return "/" + relative;
+    }
+    
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        byte[] bytes = digest.digest();
+        StringBuilder hex = new StringBuilder(HASH_LENGTH);
+        for (int i = 0; i < HASH_LENGTH / 2; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+    
+    /**
+     * One fingerprinted file, with the size and modification time it had
+     * when hashed
+     */
+    static final class Entry {
+        final Path file;
+        final String logical;
+        final String url;
+        final long size;
+        final long lastModified;
+        
+        private Entry(Path file, String logical, String url, long size, long lastModified) {
+            this.file = file;
+            this.logical = logical;
+            this.url = url;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.mwu.staticfiles;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory set of the files in the public directory, so requests for
+ * paths that do not exist (scanners probing /wp-admin and the like) are
+ * answered without touching the file system.
+ *
+ * Kept current by {@link StaticFileCache}'s directory watcher, so a file
+ * becomes visible once its creation event has been processed. Symbolic
+ * links to directories are not walked; anything below one is reported as
+ * possibly present and checked on disk as before.
+ */
+final class FileIndex {
+    private final Path root;
+    private final Set<Path> files = ConcurrentHashMap.newKeySet();
+    private final Set<Path> linkedDirectories = ConcurrentHashMap.newKeySet();
+    
+    FileIndex(Path root) {
+        this.root = root;
+    }
+    
+    /**
+     * @param attributes the entry's own attributes (links not followed)
+     */
+    void add(Path path, BasicFileAttributes attributes) {
+        if (attributes.isRegularFile()) {
+            files.add(path);
+        } else if (attributes.isSymbolicLink()) {
+            if (Files.isDirectory(path)) {
+                linkedDirectories.add(path);
+            } else {
+                files.add(path);
+            }
+        }
+    }
+    
+    /**
+     * Removes a file, or everything below a directory
+     */
+    void remove(Path path) {
+        if (files.remove(path) || linkedDirectories.remove(path)) {
+            return;
+        }
+        files.removeIf(file -> file.startsWith(path));
+        linkedDirectories.removeIf(directory -> directory.startsWith(path));
+    }
+    
+    /**
+     * @return false only if the file is known not to exist
+     */
+    boolean mayContain(Path file) {
+        if (files.contains(file)) {
+            return true;
+        }
+        if (!linkedDirectories.isEmpty()) {
+            for (Path parent = file.getParent(); parent != null && !parent.equals(root); parent = parent.getParent()) {
+                if (linkedDirectories.contains(parent)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    void clear() {
+        files.clear();
+        linkedDirectories.clear();
+    }
+    
+    int size() {
+        return files.size();
+    }
+}
@@ -0,0 +1,106 @@
+package com.mwu.staticfiles;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU pool of memory-mapped static files, bounded by total mapped bytes.
+ *
+ * A file is mapped the second time it is requested with the same
+ * modification time, so one-off downloads never take up the budget.
+ * Mappings live off-heap and are shared by every connection. Evicting an
+ * entry only drops the pool's reference; the mapping itself is released by
+ * the garbage collector once in-flight responses are done with it.
+ *
+ * Not thread-safe: {@link StaticFileCache} calls it under its own lock.
+ */
+final class MappedFilePool {
+    /** Files seen once, remembered so the second request can map them */
+    private static final int MAX_CANDIDATES = 1024;
+    
+    private final long maxBytes;
+    private final LinkedHashMap<Path, StaticAsset> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Path, Long> candidates = new LinkedHashMap<Path, Long>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Long> eldest) {
+            return size() > MAX_CANDIDATES;
+        }
+    };
+    private long bytesMapped = 0;
+    private long evictions = 0;
+    
+    MappedFilePool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    StaticAsset get(Path file) {
+        return entries.get(file);
+    }
+    
+    /**
+     * Records a request for an unmapped file
+     *
+     * @return true if the file should be mapped now
+     */
+    boolean admit(Path file, long size, long lastModified) {
+        if (size <= 0 || size > maxBytes || size > Integer.MAX_VALUE) {
+            return false;
+        }
+        Long seen = candidates.put(file, lastModified);
+        return seen != null && seen == lastModified;
+    }
+    
+    void put(Path file, StaticAsset asset) {
+        candidates.remove(file);
+        StaticAsset previous = entries.put(file, asset);
+        if (previous != null) {
+            bytesMapped -= previous.getSize();
+        }
+        bytesMapped += asset.getSize();
+        Iterator<StaticAsset> eldest = entries.values().iterator();
+        while (bytesMapped > maxBytes && eldest.hasNext()) {
+            bytesMapped -= eldest.next().getSize();
+            eldest.remove();
+            evictions++;
+        }
+    }
+    
+    /**
+     * Drops a file, or everything below a directory
+     */
+    void invalidate(Path path) {
+        candidates.keySet().removeIf(file -> file.startsWith(path));
+        Iterator<Map.Entry<Path, StaticAsset>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, StaticAsset> entry = it.next();
+            if (entry.getKey().startsWith(path)) {
+                bytesMapped -= entry.getValue().getSize();
+                it.remove();
+            }
+        }
+    }
+    
+    void clear() {
+        entries.clear();
+        candidates.clear();
+        bytesMapped = 0;
+    }
+    
+    int size() {
+        return entries.size();
+    }
+    
+    long getBytesMapped() {
+        return bytesMapped;
+    }
+    
+    long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    long getEvictions() {
+        return evictions;
+    }
+}
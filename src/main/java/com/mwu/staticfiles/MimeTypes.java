@@ -0,0 +1,145 @@
+package com.mwu.staticfiles;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Content types by file extension.
+ *
+ * A built-in table replaces {@link java.nio.file.Files#probeContentType},
+ * which asks the platform's file type detectors and so is both slow and
+ * host-dependent. Text types carry "charset=UTF-8". Entries can be added or
+ * overridden per server; overrides are used verbatim.
+ */
+public final class MimeTypes {
+    public static final String DEFAULT_TYPE = "application/octet-stream";
+    
+    private static final Map<String, String> BUILT_IN = new HashMap<>();
+    
+    static {
+        // Documents and code
+        BUILT_IN.put("html", "text/html");
+        BUILT_IN.put("htm", "text/html");
+        BUILT_IN.put("css", "text/css");
+        BUILT_IN.put("js", "text/javascript");
+        BUILT_IN.put("mjs", "text/javascript");
+        BUILT_IN.put("json", "application/json");
+        BUILT_IN.put("map", "application/json");
+        BUILT_IN.put("webmanifest", "application/manifest+json");
+        BUILT_IN.put("jsonld", "application/ld+json");
+        BUILT_IN.put("xml", "application/xml");
+        BUILT_IN.put("rss", "application/rss+xml");
+        BUILT_IN.put("atom", "application/atom+xml");
+        BUILT_IN.put("txt", "text/plain");
+        BUILT_IN.put("md", "text/markdown");
+        BUILT_IN.put("csv", "text/csv");
+        BUILT_IN.put("ics", "text/calendar");
+        BUILT_IN.put("yaml", "application/yaml");
+        BUILT_IN.put("yml", "application/yaml");
+        BUILT_IN.put("wasm", "application/wasm");
+        BUILT_IN.put("pdf", "application/pdf");
+        
+        // Images
+        BUILT_IN.put("svg", "image/svg+xml");
+        BUILT_IN.put("png", "image/png");
+        BUILT_IN.put("jpg", "image/jpeg");
+        BUILT_IN.put("jpeg", "image/jpeg");
+        BUILT_IN.put("gif", "image/gif");
+        BUILT_IN.put("webp", "image/webp");
+        BUILT_IN.put("avif", "image/avif");
+        BUILT_IN.put("ico", "image/x-icon");
+        BUILT_IN.put("bmp", "image/bmp");
+        
+        // Fonts
+        BUILT_IN.put("woff", "font/woff");
+        BUILT_IN.put("woff2", "font/woff2");
+        BUILT_IN.put("ttf", "font/ttf");
+        BUILT_IN.put("otf", "font/otf");
+        BUILT_IN.put("eot", "application/vnd.ms-fontobject");
+        
+        // Audio and video
+        BUILT_IN.put("mp3", "audio/mpeg");
+        BUILT_IN.put("m4a", "audio/mp4");
+        BUILT_IN.put("ogg", "audio/ogg");
+        BUILT_IN.put("oga", "audio/ogg");
+        BUILT_IN.put("wav", "audio/wav");
+        BUILT_IN.put("flac", "audio/flac");
+        BUILT_IN.put("mp4", "video/mp4");
+        BUILT_IN.put("m4v", "video/mp4");
+        BUILT_IN.put("webm", "video/webm");
+        BUILT_IN.put("ogv", "video/ogg");
+        BUILT_IN.put("mov", "video/quicktime");
+        BUILT_IN.put("m3u8", "application/vnd.apple.mpegurl");
+        BUILT_IN.put("ts", "video/mp2t");
+        BUILT_IN.put("vtt", "text/vtt");
+        
+        // Archives
+        BUILT_IN.put("zip", "application/zip");
+        BUILT_IN.put("gz", "application/gzip");
+        BUILT_IN.put("tar", "application/x-tar");
+        BUILT_IN.put("7z", "application/x-7z-compressed");
+        
+        for (Map.Entry<String, String> entry : BUILT_IN.entrySet()) {
+            entry.setValue(withCharset(entry.getValue()));
+        }
+    }
+    
+    private static final MimeTypes DEFAULTS = new MimeTypes(Collections.emptyMap());
+    
+    private final Map<String, String> types;
+    
+    /**
+     * @param overrides extension (without the dot) to content type, taking
+     *                  precedence over the built-in table
+     */
+    public MimeTypes(Map<String, String> overrides) {
+        this.types = new HashMap<>(BUILT_IN);
+        for (Map.Entry<String, String> entry : overrides.entrySet()) {
+            types.put(normalize(entry.getKey()), entry.getValue());
+        }
+    }
+    
+    /**
+     * The built-in table
+     */
+    public static MimeTypes defaults() {
+        return DEFAULTS;
+    }
+    
+    public String forPath(Path path) {
+        Path name = path.getFileName();
+        return name != null ? forFileName(name.toString()) : DEFAULT_TYPE;
+    }
+    
+    /**
+     * Content type for a file name, or {@link #DEFAULT_TYPE} if the
+     * extension is unknown
+     */
+    public String forFileName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot == -1 || dot == fileName.length() - 1) {
+            return DEFAULT_TYPE;
+        }
+        String type = types.get(fileName.substring(dot + 1));
+        if (type == null) {
+            // Lower-case copy only for mixed-case names
+            type = types.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+        }
+        return type != null ? type : DEFAULT_TYPE;
+    }
+    
+    private static String withCharset(String type) {
+        if (type.startsWith("text/") || type.equals("application/javascript")) {
+            return type + "; charset=UTF-8";
+        }
+        return type;
+    }
+    
+    private static String normalize(String extension) {
+        String lower = extension.toLowerCase(Locale.ROOT);
+        return lower.startsWith(".") ? lower.substring(1) : lower;
+    }
+}
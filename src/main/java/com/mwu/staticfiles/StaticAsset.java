@@ -0,0 +1,239 @@
+package com.mwu.staticfiles;
+
+import com.mwu.routing.Compression;
+import com.mwu.routing.HeaderBlock;
+import com.mwu.routing.HttpDate;
+import com.mwu.routing.Request;
+import com.mwu.routing.Response;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file from the public directory with its response headers
+ * (Content-Type, Content-Length, ETag, Last-Modified, Accept-Ranges, and
+ * Vary for compressible types) encoded up front.
+ * Small files also carry their content, hot large ones a read-only mapping
+ * of the file; the rest are sent from disk.
+ *
+ * Compressible files may have a gzip variant: a ".gz" sidecar next to the
+ * file, or a copy compressed in the background. The variant is an asset of
+ * its own, with Content-Encoding and a distinct ETag.
+ */
+public final class StaticAsset {
+    private final Path path;
+    private final String contentType;
+    private final long size;
+    private final long lastModified;
+    private final String etag;
+    private final String contentEncoding;
+    private final HeaderBlock headers;
+    private final byte[] content;
+    private final ByteBuffer mapped;
+    private volatile StaticAsset gzip;
+    
+    private StaticAsset(Path path, String contentType, long size, long lastModified, String etag,
+                        String contentEncoding, byte[] content, ByteBuffer mapped) {
+        this.path = path;
+        this.contentType = contentType;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.etag = etag;
+        this.contentEncoding = contentEncoding;
+        
+        List<String> headers = new ArrayList<>(16);
+        headers.add("Content-Type");
+        headers.add(contentType);
+        headers.add("Content-Length");
+        headers.add(String.valueOf(size));
+        if (contentEncoding != null) {
+            headers.add("Content-Encoding");
+            headers.add(contentEncoding);
+        }
+        headers.add("ETag");
+        headers.add(etag);
+        headers.add("Last-Modified");
+        headers.add(HttpDate.format(lastModified));
+        headers.add("Accept-Ranges");
+        headers.add("bytes");
+        if (contentEncoding != null || Compression.isCompressible(contentType)) {
+            headers.add("Vary");
+            headers.add("Accept-Encoding");
+        }
+        this.headers = HeaderBlock.of(headers.toArray(new String[0]));
+        this.content = content;
+        this.mapped = mapped;
+    }
+    
+    private StaticAsset(Path path, String contentType, long size, long lastModified,
+                        byte[] content, ByteBuffer mapped) {
+        this(path, contentType, size, lastModified,
+                "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"",
+                null, content, mapped);
+    }
+    
+    /**
+     * @param loadContent whether to read the file into memory
+     */
+    static StaticAsset load(Path path, BasicFileAttributes attributes, String contentType,
+                            boolean loadContent) throws IOException {
+        byte[] content = null;
+        long size = attributes.size();
+        if (loadContent) {
+            content = Files.readAllBytes(path);
+            size = content.length;
+        }
+        return new StaticAsset(path, contentType, size, attributes.lastModifiedTime().toMillis(), content, null);
+    }
+    
+    /**
+     * Maps the whole file read-only. The mapping outlives the channel and is
+     * released by the garbage collector once no asset references it.
+     */
+    static StaticAsset map(Path path, BasicFileAttributes attributes, String contentType) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new StaticAsset(path, contentType, mapped.capacity(),
+                attributes.lastModifiedTime().toMillis(), null, mapped);
+    }
+    
+    /**
+     * Sends this file as the response body with its pre-encoded headers:
+     * the gzip variant if the client accepts it, a 304 for revalidations of
+     * a 200, and only the requested parts for Range requests
+     */
+    public void send(Request request, Response response) throws IOException {
+        StaticAsset asset = this;
+        StaticAsset variant = gzip;
+        if (variant != null && request.acceptsEncoding("gzip")) {
+            asset = variant;
+        }
+        response.headers(asset.headers);
+        if (response.checkNotModified(request)) {
+            return;
+        }
+        if (asset.content != null) {
+            // Head and body in one write
+            response.send(request, ByteBuffer.wrap(asset.content));
+        } else if (asset.mapped != null) {
+            // Hot large file: off-heap pages shared by every connection
+            response.send(request, asset.getMappedContent());
+        } else {
+            // Straight from the page cache to the socket
+            response.sendFile(request, asset.path);
+        }
+    }
+    
+    /**
+     * Gzip variant held in memory
+     */
+    StaticAsset gzipped(byte[] compressed) {
+        return new StaticAsset(path, contentType, compressed.length, lastModified,
+                variantETag("gzip"), "gzip", compressed, null);
+    }
+    
+    /**
+     * Gzip variant from a ".gz" sidecar file
+     *
+     * @param loadContent whether to read the sidecar into memory
+     */
+    StaticAsset gzipSidecar(Path sidecar, BasicFileAttributes attributes, boolean loadContent) throws IOException {
+        byte[] compressed = loadContent ? Files.readAllBytes(sidecar) : null;
+        long compressedSize = compressed != null ? compressed.length : attributes.size();
+        return new StaticAsset(sidecar, contentType, compressedSize, lastModified,
+                variantETag("gzip"), "gzip", compressed, null);
+    }
+    
+    private String variantETag(String coding) {
+        return etag.substring(0, etag.length() - 1) + "-" + coding + "\"";
+    }
+    
+    void attachGzip(StaticAsset variant) {
+        this.gzip = variant;
+    }
+    
+    /**
+     * Heap bytes held by this asset and its variant
+     */
+    long getMemorySize() {
+        long memory = content != null ? content.length : 0;
+        StaticAsset variant = gzip;
+        if (variant != null && variant.content != null) {
+            memory += variant.content.length;
+        }
+        return memory;
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    public String getContentType() {
+        return contentType;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public long getLastModified() {
+        return lastModified;
+    }
+    
+    public String getETag() {
+        return etag;
+    }
+    
+    /**
+     * "gzip" for a compressed variant, null for the file itself
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+    
+    /**
+     * Gzip-encoded variant of this file, or null if there is none (yet)
+     */
+    public StaticAsset getGzip() {
+        return gzip;
+    }
+    
+    /**
+     * Pre-encoded entity headers for {@link com.mwu.routing.Response#headers(HeaderBlock)}
+     */
+    public HeaderBlock getHeaders() {
+        return headers;
+    }
+    
+    /**
+     * File content, or null if the file is served from disk
+     */
+    public byte[] getContent() {
+        return content;
+    }
+    
+    public boolean isInMemory() {
+        return content != null;
+    }
+    
+    /**
+     * Mapped file content as a fresh buffer over the shared mapping, or null
+     * if the file is not mapped
+     */
+    public ByteBuffer getMappedContent() {
+        return mapped != null ? mapped.duplicate() : null;
+    }
+    
+    public boolean isMapped() {
+        return mapped != null;
+    }
+}
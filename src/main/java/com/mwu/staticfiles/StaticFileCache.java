@@ -0,0 +1,711 @@
+package com.mwu.staticfiles;
+
+import com.mwu.logger.Logger;
+import com.mwu.routing.Compression;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+
+/**
+ * Byte-bounded LRU cache of the small files in the public directory, with
+ * a second tier of memory-mapped large files ({@link MappedFilePool}).
+ *
+ * Cached files are served without touching the file system, and neither
+ * are paths that do not exist: a {@link FileIndex} of the directory
+ * answers misses from memory. A WatchService on the public directory (and
+ * every directory below it) keeps the index current and evicts entries as
+ * soon as files change; if the directory cannot be watched, nothing is
+ * cached or indexed so stale content is never served.
+ *
+ * Compressible files get a gzip variant: an up-to-date ".gz" sidecar if
+ * there is one, otherwise cached files are compressed once, at maximum
+ * level, on a low-priority background thread. At start the public
+ * directory is walked to load and compress compressible files ahead of the
+ * first request, until the cache is full.
+ *
+ * Pinned pages (index, 404 and maintenance pages) are held outside the
+ * LRU and its budget, with their gzip variant computed when they load, so
+ * they are always served from memory.
+ *
+ * Optionally every file is also reachable under a content-hashed URL
+ * ({@link AssetManifest}), built when the directory is indexed and updated
+ * by the watcher, for pages to link to and clients to cache for good.
+ */
+public class StaticFileCache implements Closeable {
+    private static final Logger logger = new Logger();
+    /** Smaller files are not worth compressing */
+    private static final int MIN_COMPRESS_SIZE = 512;
+    /** Larger pinned pages are served like any other file */
+    private static final int MAX_PAGE_SIZE = 1024 * 1024;
+    
+    private final Path root;
+    private final long maxBytes;
+    private final long maxFileSize;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Path, StaticAsset> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Path, StaticAsset> pages = new HashMap<>();
+    private final Set<Path> pinned = ConcurrentHashMap.newKeySet();
+    private long bytesHeld = 0;
+    /** Bumped on every invalidation so loads racing a change are not cached */
+    private long generation = 0;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder mappedHits = new LongAdder();
+    private final LongAdder gzipVariants = new LongAdder();
+    private final LongAdder indexMisses = new LongAdder();
+    private final MappedFilePool mappedFiles;
+    // Replaced whole when rebuilt, so lookups never see a half-built one
+    private volatile FileIndex index;
+    private volatile AssetManifest manifest;
+    
+    private boolean precompress = true;
+    private boolean fingerprint = false;
+    private MimeTypes mimeTypes = MimeTypes.defaults();
+    private ExecutorService compressor;
+    
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private Thread watchThread;
+    private volatile boolean enabled = false;
+    
+    /**
+     * @param maxBytes    total content bytes to hold; 0 disables caching
+     * @param maxFileSize files larger than this are never held on the heap
+     */
+    public StaticFileCache(Path root, long maxBytes, long maxFileSize) {
+        this(root, maxBytes, maxFileSize, 0);
+    }
+    
+    /**
+     * @param maxMappedBytes total size of larger files to keep mapped;
+     *                       0 serves them all from disk
+     */
+    public StaticFileCache(Path root, long maxBytes, long maxFileSize, long maxMappedBytes) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.maxFileSize = Math.min(maxFileSize, maxBytes);
+        this.mappedFiles = maxMappedBytes > 0 ? new MappedFilePool(maxMappedBytes) : null;
+        this.index = new FileIndex(this.root);
+        this.manifest = new AssetManifest(this.root);
+    }
+    
+    /**
+     * Whether to compress cached files in the background (default true).
+     * Sidecar ".gz" files are used either way. Call before {@link #start()}.
+     */
+    public void setPrecompress(boolean precompress) {
+        this.precompress = precompress;
+    }
+    
+    /**
+     * Content types for served files (default: the built-in table). Call
+     * before {@link #start()}.
+     */
+    public void setMimeTypes(MimeTypes mimeTypes) {
+        this.mimeTypes = mimeTypes;
+    }
+    
+    /**
+     * Whether to hash every file for {@link #fingerprintedUrl(String)}
+     * (default false). Files are read once at start to hash them. Call
+     * before {@link #start()}.
+     */
+    public void setFingerprint(boolean fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+    
+    /**
+     * Indexes and starts watching the public directory. Caching, the index
+     * and fingerprinting stay off if that fails.
+     */
+    public void start() {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            registerTree(root);
+        } catch (IOException e) {
+            logger.warn("Cannot watch " + root + ", static file cache disabled: " + e.getMessage());
+            closeWatchService();
+            index.clear();
+            manifest.clear();
+            return;
+        }
+        enabled = true;
+        watchThread = new Thread(this::watchLoop, "mwu-static-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        
+        if (precompress && maxBytes > 0) {
+            compressor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mwu-static-compress");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            compressor.execute(this::precompressAll);
+        }
+    }
+    
+    public Path getRoot() {
+        return root;
+    }
+    
+    /**
+     * Keeps a file in memory, outside the cache budget, from its first
+     * request until it changes (then it is reloaded on the next one)
+     *
+     * @param file absolute, normalized path inside the root
+     */
+    public void pin(Path file) {
+        pinned.add(file);
+    }
+    
+    // ==================== Lookup ====================
+    
+    /**
+     * Looks up a file under the public directory.
+     *
+     * @param file absolute, normalized path inside the root
+     * @return the asset, or null if there is no regular file at that path
+     */
+    public StaticAsset get(Path file) throws IOException {
+        if (enabled && !index.mayContain(file)) {
+            indexMisses.increment();
+            return null;
+        }
+        
+        long loadGeneration;
+        lock.lock();
+        try {
+            StaticAsset cached = pages.get(file);
+            if (cached == null) {
+                cached = entries.get(file);
+            }
+            if (cached == null && mappedFiles != null) {
+                cached = mappedFiles.get(file);
+                if (cached != null) {
+                    mappedHits.increment();
+                }
+            }
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            loadGeneration = generation;
+        } finally {
+            lock.unlock();
+        }
+        misses.increment();
+        
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        
+        if (enabled && pinned.contains(file) && attributes.size() <= MAX_PAGE_SIZE) {
+            StaticAsset page = StaticAsset.load(file, attributes, mimeTypes.forPath(file), true);
+            if (!findSidecar(page, true)) {
+                StaticAsset variant = gzipVariant(page);
+                if (variant != null) {
+                    page.attachGzip(variant);
+                }
+            }
+            storePage(file, page, loadGeneration);
+            return page;
+        }
+        
+        boolean cacheable = enabled && attributes.size() <= maxFileSize;
+        if (!cacheable && enabled && shouldMap(file, attributes)) {
+            StaticAsset asset = StaticAsset.map(file, attributes, mimeTypes.forPath(file));
+            findSidecar(asset, false);
+            storeMapped(file, asset, loadGeneration);
+            return asset;
+        }
+        StaticAsset asset = StaticAsset.load(file, attributes, mimeTypes.forPath(file), cacheable);
+        boolean hasSidecar = findSidecar(asset, cacheable);
+        if (cacheable && asset.getSize() <= maxFileSize) {
+            store(file, asset, loadGeneration);
+            if (!hasSidecar) {
+                scheduleCompression(file, asset);
+            }
+        }
+        return asset;
+    }
+    
+    /**
+     * Looks up the file behind a content-hashed URL.
+     *
+     * @param url request path, e.g. "/js/app.3f9c2a1b.js"
+     * @return the asset, or null if the URL is not the current hashed URL of
+     *         a file
+     */
+    public StaticAsset getFingerprinted(String url) throws IOException {
+        if (!fingerprint || !enabled) {
+            return null;
+        }
+        AssetManifest.Entry entry = manifest.resolve(url);
+        if (entry == null) {
+            return null;
+        }
+        StaticAsset asset = get(entry.file);
+        if (asset == null || asset.getSize() != entry.size || asset.getLastModified() != entry.lastModified) {
+            // Changed since it was hashed; the watcher will give it a new URL
+            return null;
+        }
+        return asset;
+    }
+    
+    /**
+     * Content-hashed URL for a file, e.g. "/js/app.3f9c2a1b.js" for
+     * "/js/app.js"
+     *
+     * @param path URL path of a file in the public directory
+     * @return the hashed URL, or the path unchanged if the file is not
+     *         fingerprinted
+     */
+    public String fingerprintedUrl(String path) {
+        String url = fingerprint && enabled ? manifest.url(path) : null;
+        return url != null ? url : path;
+    }
+    
+    /**
+     * URL paths of all fingerprinted files mapped to their hashed URLs
+     */
+    public Map<String, String> getManifest() {
+        return fingerprint && enabled ? manifest.snapshot() : Collections.emptyMap();
+    }
+    
+    /**
+     * Attaches "file.gz" as the gzip variant if it is at least as new as the
+     * file itself
+     *
+     * @return true if a sidecar was attached
+     */
+    private boolean findSidecar(StaticAsset asset, boolean loadContent) throws IOException {
+        if (!Compression.isCompressible(asset.getContentType())) {
+            return false;
+        }
+        Path sidecar = asset.getPath().resolveSibling(asset.getPath().getFileName() + ".gz");
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(sidecar, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (!attributes.isRegularFile() || attributes.lastModifiedTime().toMillis() < asset.getLastModified()) {
+            return false;
+        }
+        asset.attachGzip(asset.gzipSidecar(sidecar, attributes, loadContent && attributes.size() <= maxFileSize));
+        return true;
+    }
+    
+    private void scheduleCompression(Path file, StaticAsset asset) {
+        if (compressor == null || asset.getSize() < MIN_COMPRESS_SIZE
+                || !Compression.isCompressible(asset.getContentType())) {
+            return;
+        }
+        try {
+            compressor.execute(() -> compress(file, asset));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+    
+    /**
+     * Compresses a cached file and attaches the result if it is still
+     * cached and the saving is worth it
+     */
+    private void compress(Path file, StaticAsset asset) {
+        StaticAsset variant = gzipVariant(asset);
+        if (variant == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (entries.get(file) != asset || asset.getGzip() != null) {
+                return;
+            }
+            asset.attachGzip(variant);
+            bytesHeld += variant.getSize();
+            gzipVariants.increment();
+            evictOverBudget();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Compresses an in-memory asset at maximum level
+     *
+     * @return the variant, or null if the file is not worth compressing
+     */
+    private static StaticAsset gzipVariant(StaticAsset asset) {
+        byte[] content = asset.getContent();
+        if (content.length < MIN_COMPRESS_SIZE || !Compression.isCompressible(asset.getContentType())) {
+            return null;
+        }
+        byte[] compressed = Compression.encode(content, "gzip", Deflater.BEST_COMPRESSION);
+        if (compressed.length > content.length - content.length / 10) {
+            return null;
+        }
+        return asset.gzipped(compressed);
+    }
+    
+    /**
+     * Loads compressible files (which queues their compression) until the
+     * cache is full
+     */
+    private void precompressAll() {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (!enabled || isFull()) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (attributes.isRegularFile() && attributes.size() >= MIN_COMPRESS_SIZE
+                            && attributes.size() <= maxFileSize
+                            && !file.getFileName().toString().endsWith(".gz")
+                            && Compression.isCompressible(mimeTypes.forPath(file))) {
+                        get(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Precompressing " + root + " failed: " + e.getMessage());
+        }
+    }
+    
+    private boolean isFull() {
+        lock.lock();
+        try {
+            return bytesHeld >= maxBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void store(Path file, StaticAsset asset, long loadGeneration) {
+        lock.lock();
+        try {
+            if (generation != loadGeneration || entries.containsKey(file)) {
+                return;
+            }
+            entries.put(file, asset);
+            bytesHeld += asset.getMemorySize();
+            evictOverBudget();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void storePage(Path file, StaticAsset page, long loadGeneration) {
+        lock.lock();
+        try {
+            if (generation == loadGeneration) {
+                pages.put(file, page);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void evictOverBudget() {
+        Iterator<StaticAsset> eldest = entries.values().iterator();
+        while (bytesHeld > maxBytes && eldest.hasNext()) {
+            bytesHeld -= eldest.next().getMemorySize();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+    
+    private boolean shouldMap(Path file, BasicFileAttributes attributes) {
+        if (mappedFiles == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            return mappedFiles.admit(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void storeMapped(Path file, StaticAsset asset, long loadGeneration) {
+        lock.lock();
+        try {
+            if (generation == loadGeneration) {
+                mappedFiles.put(file, asset);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Drops a file, or everything below a directory
+     */
+    public void invalidate(Path path) {
+        lock.lock();
+        try {
+            generation++;
+            if (mappedFiles != null) {
+                mappedFiles.invalidate(path);
+            }
+            pages.keySet().removeIf(page -> page.startsWith(path));
+            StaticAsset removed = entries.remove(path);
+            if (removed != null) {
+                bytesHeld -= removed.getMemorySize();
+                return;
+            }
+            Iterator<Map.Entry<Path, StaticAsset>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Path, StaticAsset> entry = it.next();
+                if (entry.getKey().startsWith(path)) {
+                    bytesHeld -= entry.getValue().getMemorySize();
+                    it.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void clear() {
+        lock.lock();
+        try {
+            generation++;
+            entries.clear();
+            pages.clear();
+            bytesHeld = 0;
+            if (mappedFiles != null) {
+                mappedFiles.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // ==================== Statistics ====================
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        lock.lock();
+        try {
+            stats.put("enabled", enabled);
+            stats.put("entries", entries.size());
+            stats.put("bytes_held", bytesHeld);
+            stats.put("pinned_pages", pages.size());
+            if (mappedFiles != null) {
+                stats.put("mapped_entries", mappedFiles.size());
+                stats.put("bytes_mapped", mappedFiles.getBytesMapped());
+                stats.put("max_bytes_mapped", mappedFiles.getMaxBytes());
+                stats.put("mapped_evictions", mappedFiles.getEvictions());
+            }
+        } finally {
+            lock.unlock();
+        }
+        stats.put("max_bytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("mapped_hits", mappedHits.sum());
+        stats.put("misses", missCount);
+        stats.put("hit_ratio", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+        stats.put("evictions", evictions.sum());
+        stats.put("gzip_variants", gzipVariants.sum());
+        stats.put("indexed_files", index.size());
+        stats.put("index_misses", indexMisses.sum());
+        if (fingerprint) {
+            stats.put("fingerprinted_files", manifest.size());
+        }
+        return stats;
+    }
+    
+    // ==================== Watching ====================
+    
+    /**
+     * Watches a directory and everything below it, adding its files to the
+     * index
+     */
+    private void registerTree(Path directory) throws IOException {
+        registerTree(directory, index, manifest);
+    }
+    
+    /**
+     * Indexes and watches the whole public directory again after events
+     * were lost. The new index and manifest are built on the side and
+     * swapped in when complete, so files stay reachable meanwhile.
+     */
+    private void rebuildIndex() throws IOException {
+        FileIndex rebuiltIndex = new FileIndex(root);
+        AssetManifest rebuiltManifest = new AssetManifest(root);
+        registerTree(root, rebuiltIndex, rebuiltManifest);
+        index = rebuiltIndex;
+        manifest = rebuiltManifest;
+    }
+    
+    private void registerTree(Path directory, FileIndex targetIndex, AssetManifest targetManifest) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                synchronized (watchedDirectories) {
+                    watchedDirectories.put(key, dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                targetIndex.add(file, attrs);
+                fingerprint(file, targetManifest);
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Vanished mid-walk; its delete event follows
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    
+    /**
+     * Brings the index and manifest up to date for a created, changed or
+     * deleted entry
+     */
+    private void updateIndex(WatchEvent.Kind<?> kind, Path changed) throws IOException {
+        if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            index.remove(changed);
+            manifest.remove(changed);
+            return;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(changed, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            index.remove(changed);
+            manifest.remove(changed);
+            return;
+        }
+        if (attributes.isDirectory()) {
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                registerTree(changed);
+            }
+        } else {
+            index.add(changed, attributes);
+            fingerprint(changed, manifest);
+        }
+    }
+    
+    /**
+     * (Re)hashes a file for the manifest, if fingerprinting is on
+     */
+    private void fingerprint(Path file, AssetManifest targetManifest) {
+        if (!fingerprint) {
+            return;
+        }
+        try {
+            targetManifest.add(file, Files.readAttributes(file, BasicFileAttributes.class));
+        } catch (IOException e) {
+            // Gone or unreadable (e.g. a dangling link); nothing to link to
+            targetManifest.remove(file);
+        }
+    }
+    
+    private void watchLoop() {
+        while (enabled) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory;
+            synchronized (watchedDirectories) {
+                directory = watchedDirectories.get(key);
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                try {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                        // Events were lost; start over
+                        clear();
+                        rebuildIndex();
+                        continue;
+                    }
+                    Path changed = directory.resolve((Path) event.context());
+                    invalidate(changed);
+                    String name = changed.getFileName().toString();
+                    if (name.endsWith(".gz")) {
+                        // A sidecar changed; reload the file it belongs to
+                        invalidate(changed.resolveSibling(name.substring(0, name.length() - 3)));
+                    }
+                    updateIndex(event.kind(), changed);
+                } catch (IOException e) {
+                    // Can't watch a new directory; stop caching rather than go stale
+                    logger.warn("Cannot watch " + directory + ", static file cache disabled: " + e.getMessage());
+                    // The index and manifest are no longer consulted, and are
+                    // left as they are so lookups already under way still work
+                    enabled = false;
+                    clear();
+                }
+            }
+            if (!key.reset()) {
+                synchronized (watchedDirectories) {
+                    watchedDirectories.remove(key);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void close() {
+        enabled = false;
+        closeWatchService();
+        if (compressor != null) {
+            compressor.shutdownNow();
+        }
+        if (watchThread != null) {
+            watchThread.interrupt();
+        }
+        clear();
+    }
+    
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -7,7 +7,8 @@ import java.io.InputStreamReader;
 
 /**
  * Listens for terminal commands to control the server
- * Supports: "stop" to stop the server, "restart" to restart
+ * Supports: "stop" to stop the server, "restart" to restart, "reload" to
+ * rebuild the routes in place
  */
 public class CommandListener implements Runnable {
     private static final Logger logger = new Logger();
@@ -23,7 +24,7 @@ public class CommandListener implements Runnable {
         logger.info("booting command listener...");
         
         logger.info("Command Listener Started");
-        logger.info("Type: stop, restart, status, or help");
+        logger.info("Type: stop, restart, reload, status, or help");
         
         BufferedReader reader = null;
         try {
@@ -54,6 +55,9 @@ public class CommandListener implements Runnable {
                         case "restart":
                             handleRestart();
                             return;
+                        case "reload":
+                            handleReload();
+                            break;
                         case "status":
                             handleStatus();
                             break;
@@ -101,6 +105,14 @@ public class CommandListener implements Runnable {
         System.exit(0);
     }
     
+    private void handleReload() {
+        try {
+            server.reloadRoutes();
+        } catch (IllegalStateException e) {
+            logger.error("Routes not reloaded: " + e.getMessage());
+        }
+    }
+    
     private void handleStatus() {
         String status = "Server Status: Running on " + server.getHost() + ":" + server.getPort();
         logger.info(status);
@@ -111,6 +123,7 @@ public class CommandListener implements Runnable {
         System.out.println("Available Commands:");
         System.out.println("  stop    - Stop the server");
         System.out.println("  restart - Restart the server");
+        System.out.println("  reload  - Rebuild routes without restarting");
         System.out.println("  status  - Show server status");
         System.out.println("  help    - Show this help message");
         System.out.println("========================================\n");
@@ -5,6 +5,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
@@ -23,11 +24,14 @@ public class TrafficMonitor {
     private final Map<Integer, AtomicLong> requestsByStatusCode = new ConcurrentHashMap<>();
     private final Map<String, AtomicLong> requestsByUserAgent = new ConcurrentHashMap<>();
 
-    // Performance metrics
-    private final List<Long> responseTimes = new ArrayList<>();
+    // Performance metrics: lock-free ring of the last RESPONSE_WINDOW response times,
+    // so recording never blocks (or pins a virtual thread's carrier)
+    private static final int RESPONSE_WINDOW = 1000;
+    private final AtomicLongArray responseTimes = new AtomicLongArray(RESPONSE_WINDOW);
+    private final AtomicLong responseCount = new AtomicLong(0);
     private final AtomicLong totalResponseTime = new AtomicLong(0);
-    private volatile long minResponseTime = Long.MAX_VALUE;
-    private volatile long maxResponseTime = 0;
+    private final AtomicLong minResponseTime = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxResponseTime = new AtomicLong(0);
 
     // Active connections tracking
     private final AtomicLong activeConnections = new AtomicLong(0);
@@ -40,7 +44,7 @@ public class TrafficMonitor {
         requestsByPath.computeIfAbsent(path, k -> new AtomicLong(0)).incrementAndGet();
         requestsByIP.computeIfAbsent(clientIP, k -> new AtomicLong(0)).incrementAndGet();
         requestsByMethod.computeIfAbsent(method, k -> new AtomicLong(0)).incrementAndGet();
-        requestsByUserAgent.computeIfAbsent(userAgent, k -> new AtomicLong(0)).incrementAndGet();
+        requestsByUserAgent.computeIfAbsent(userAgent != null ? userAgent : "unknown", k -> new AtomicLong(0)).incrementAndGet();
 
         activeConnections.incrementAndGet();
         long currentConnections = activeConnections.get();
@@ -57,15 +61,11 @@ public class TrafficMonitor {
         totalBytesSent.addAndGet(bytesSent);
         totalResponseTime.addAndGet(responseTimeMs);
 
-        synchronized (responseTimes) {
-            responseTimes.add(responseTimeMs);
-            if (responseTimes.size() > 1000) { // Keep only last 1000 response times
-                responseTimes.remove(0);
-            }
-        }
+        long slot = responseCount.getAndIncrement();
+        responseTimes.set((int) (slot % RESPONSE_WINDOW), responseTimeMs);
 
-        if (responseTimeMs < minResponseTime) minResponseTime = responseTimeMs;
-        if (responseTimeMs > maxResponseTime) maxResponseTime = responseTimeMs;
+        minResponseTime.accumulateAndGet(responseTimeMs, Math::min);
+        maxResponseTime.accumulateAndGet(responseTimeMs, Math::max);
 
         activeConnections.decrementAndGet();
     }
@@ -75,33 +75,36 @@ public class TrafficMonitor {
         long totalRespTime = totalResponseTime.get();
         double avgResponseTime = totalReq > 0 ? (double) totalRespTime / totalReq : 0;
 
-        synchronized (responseTimes) {
-            List<Long> timesCopy = new ArrayList<>(responseTimes);
-            double medianResponseTime = calculateMedian(timesCopy);
-            double p95ResponseTime = calculatePercentile(timesCopy, 95.0);
-
-            return new TrafficStats(
-                totalReq,
-                totalBytesSent.get(),
-                requestsByPath.entrySet().stream()
-                    .sorted(Map.Entry.<String, AtomicLong>comparingByValue((a, b) -> Long.compare(b.get(), a.get())))
-                    .limit(10)
-                    .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get())),
-                requestsByIP.size(),
-                requestsByMethod.entrySet().stream()
-                    .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get())),
-                requestsByStatusCode.entrySet().stream()
-                    .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get())),
-                avgResponseTime,
-                minResponseTime == Long.MAX_VALUE ? 0 : minResponseTime,
-                maxResponseTime,
-                medianResponseTime,
-                p95ResponseTime,
-                activeConnections.get(),
-                peakConnections,
-                startTime
-            );
+        List<Long> timesCopy = new ArrayList<>(RESPONSE_WINDOW);
+        int recorded = (int) Math.min(responseCount.get(), RESPONSE_WINDOW);
+        for (int i = 0; i < recorded; i++) {
+            timesCopy.add(responseTimes.get(i));
         }
+        double medianResponseTime = calculateMedian(timesCopy);
+        double p95ResponseTime = calculatePercentile(timesCopy, 95.0);
+        long minTime = minResponseTime.get();
+
+        return new TrafficStats(
+            totalReq,
+            totalBytesSent.get(),
+            requestsByPath.entrySet().stream()
+                .sorted(Map.Entry.<String, AtomicLong>comparingByValue((a, b) -> Long.compare(b.get(), a.get())))
+                .limit(10)
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get())),
+            requestsByIP.size(),
+            requestsByMethod.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get())),
+            requestsByStatusCode.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get())),
+            avgResponseTime,
+            minTime == Long.MAX_VALUE ? 0 : minTime,
+            maxResponseTime.get(),
+            medianResponseTime,
+            p95ResponseTime,
+            activeConnections.get(),
+            peakConnections,
+            startTime
+        );
     }
 
     private double calculateMedian(List<Long> times) {